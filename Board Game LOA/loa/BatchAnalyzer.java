@@ -0,0 +1,164 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static loa.Piece.*;
+import static loa.Square.*;
+
+/** Scores a stream of positions with the engine, several at a time.
+ *  Positions are read in a compact text format: eight rows of eight
+ *  squares (top row first, each square 'b', 'w', or '-', spaces
+ *  optional), followed by a line containing the side to move ("black" or
+ *  "white").  Blank lines and lines starting with '#' are ignored.  For
+ *  each position, one line is written, in input order, of the form
+ *        N MOVE SCORE DEPTH
+ *  giving its ordinal number (from 1), the engine's move, its value for
+ *  the side to move, and the depth searched, or
+ *        N over WINNER
+ *  if the game is over in that position, or
+ *        N none
+ *  if no search of it finished in the time allowed.  Only a fixed number of
+ *  positions are in flight at any time, so memory use does not depend on
+ *  the length of the input.
+ *  @author Qianfei(Ben) Hu
+ */
+class BatchAnalyzer {
+
+    /** Number of positions in flight per worker thread. */
+    static final int POSITIONS_PER_WORKER = 4;
+
+    /** An analyzer that searches each position to DEPTH plies or, if
+     *  MILLIS > 0, for MILLIS milliseconds, using WORKERS threads that
+     *  share transposition table TABLE. */
+    BatchAnalyzer(int workers, int depth, long millis,
+                  TranspositionTable table) {
+        _workers = workers;
+        _depth = depth;
+        _millis = millis;
+        _table = table;
+    }
+
+    /** Analyze all positions on INPUT, writing results to OUTPUT.  Return
+     *  the number of positions analyzed.  Throws IllegalArgumentException
+     *  on a malformed position. */
+    long analyze(BufferedReader input, PrintStream output)
+        throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(_workers);
+        ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+        long count = 0;
+        try {
+            for (Board position = readPosition(input); position != null;
+                 position = readPosition(input)) {
+                if (pending.size() >= _workers * POSITIONS_PER_WORKER) {
+                    output.println(await(pending.removeFirst()));
+                }
+                count += 1;
+                long n = count;
+                Board board = position;
+                pending.addLast(pool.submit(() -> analyze(n, board)));
+            }
+            while (!pending.isEmpty()) {
+                output.println(await(pending.removeFirst()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        output.flush();
+        return count;
+    }
+
+    /** Return the result line for position number N, BOARD. */
+    private String analyze(long n, Board board) {
+        if (board.gameOver()) {
+            return String.format("%d over %s", n, board.winner().fullName());
+        }
+        MachinePlayer engine =
+            new MachinePlayer(board.turn(), null, _table, null);
+        List<MachinePlayer.Variation> lines =
+            engine.analyze(board, 1, _depth, _millis);
+        if (lines.isEmpty()) {
+            return String.format("%d none", n);
+        }
+        MachinePlayer.Variation best = lines.get(0);
+        return String.format("%d %s %d %d", n, best.moves().get(0),
+                             best.value(), best.depth());
+    }
+
+    /** Return the value of RESULT, waiting for it as necessary. */
+    private static String await(Future<String> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException excp) {
+            throw new Error("unexpected interrupt");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new Error(excp.getCause());
+        }
+    }
+
+    /** Return the next position on INPUT, or null at end of input. */
+    static Board readPosition(BufferedReader input) throws IOException {
+        Piece[][] contents = new Piece[BOARD_SIZE][BOARD_SIZE];
+        int row = BOARD_SIZE - 1;
+        for (String line = input.readLine(); line != null;
+             line = input.readLine()) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (row < 0) {
+                Piece turn = Piece.playerValueOf(line);
+                if (turn == EMP) {
+                    throw new IllegalArgumentException("bad side to move");
+                }
+                return new Board(contents, turn);
+            }
+            String squares = line.replace(" ", "");
+            if (squares.length() != BOARD_SIZE) {
+                throw new IllegalArgumentException("bad position row: "
+                                                   + line);
+            }
+            for (int c = 0; c < BOARD_SIZE; c += 1) {
+                contents[row][c] = pieceOf(squares.charAt(c));
+            }
+            row -= 1;
+        }
+        if (row != BOARD_SIZE - 1) {
+            throw new IllegalArgumentException("incomplete position");
+        }
+        return null;
+    }
+
+    /** Return the Piece denoted by C in the position format. */
+    private static Piece pieceOf(char c) {
+        switch (c) {
+        case 'b':
+            return BP;
+        case 'w':
+            return WP;
+        case '-':
+            return EMP;
+        default:
+            throw new IllegalArgumentException("bad square: " + c);
+        }
+    }
+
+    /** Number of worker threads. */
+    private final int _workers;
+    /** Search depth, used if _millis is 0. */
+    private final int _depth;
+    /** Search time per position in milliseconds, or 0. */
+    private final long _millis;
+    /** Search results shared by all workers. */
+    private final TranspositionTable _table;
+}
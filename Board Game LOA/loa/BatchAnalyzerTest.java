@@ -0,0 +1,137 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static loa.Move.mv;
+import static loa.Piece.*;
+import static loa.Square.*;
+
+public class BatchAnalyzerTest {
+
+    /** Return BOARD in the position format of BatchAnalyzer. */
+    private static String format(Board board) {
+        StringBuilder out = new StringBuilder();
+        for (int r = BOARD_SIZE - 1; r >= 0; r -= 1) {
+            for (int c = 0; c < BOARD_SIZE; c += 1) {
+                out.append(board.get(sq(c, r)).abbrev());
+            }
+            out.append("\n");
+        }
+        return out.append(board.turn().fullName()).append("\n").toString();
+    }
+
+    /** Return a board after playing MOVES from the initial position. */
+    private static Board play(String... moves) {
+        Board b = new Board();
+        for (String move : moves) {
+            b.makeMove(mv(move));
+        }
+        return b;
+    }
+
+    /** A position in which black's pieces are connected. */
+    static final String BLACK_WON =
+        "# black has won\n"
+        + "--------\n"
+        + "w------w\n"
+        + "--------\n"
+        + "---bb---\n"
+        + "--------\n"
+        + "--------\n"
+        + "w------w\n"
+        + "--------\n"
+        + "white\n";
+
+    /** Return a reader of TEXT. */
+    private static BufferedReader reader(String text) {
+        return new BufferedReader(new StringReader(text));
+    }
+
+    @Test
+    public void testReadPosition() throws IOException {
+        Board moved = play("b1-b3");
+        BufferedReader in =
+            reader("# initial position\n\n"
+                   + "- b b b b b b -\n"
+                   + "w------w\nw------w\nw------w\n"
+                   + "w------w\nw------w\nw------w\n"
+                   + "-bbbbbb-\n"
+                   + "black\n"
+                   + format(moved) + BLACK_WON);
+        assertEquals("initial position", new Board(),
+                     BatchAnalyzer.readPosition(in));
+        Board next = BatchAnalyzer.readPosition(in);
+        assertEquals("moved position", moved, next);
+        assertEquals("row 1 is the bottom row", BP, next.get(sq("b3")));
+        assertEquals("side to move", WP, next.turn());
+        Board over = BatchAnalyzer.readPosition(in);
+        assertTrue("game over", over.gameOver());
+        assertEquals("black won", BP, over.winner());
+        assertNull("end of input", BatchAnalyzer.readPosition(in));
+
+        String initial = format(new Board());
+        for (String bad : new String[] {
+                initial.replace("-bbbbbb-\nblack", "-bbbbb-\nblack"),
+                initial.replace("-bbbbbb-\nblack", "-bbbxbb-\nblack"),
+                initial.replace("black", "green"),
+                initial.substring(0, initial.indexOf("black")) }) {
+            try {
+                BatchAnalyzer.readPosition(reader(bad));
+                fail("accepted " + bad);
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testAnalyzeInOrder() throws IOException {
+        final int depth = 2;
+        Board[] positions = {
+            new Board(), play("b1-b3"), play("b1-b3", "a2-c2"),
+            null, play("d1-d3"), play("d1-d3", "h4-f4"),
+            play("g1-g3", "a7-c7", "c1-c4"),
+        };
+        StringBuilder text = new StringBuilder("# positions\n");
+        for (Board b : positions) {
+            text.append(b == null ? BLACK_WON : format(b)).append("\n");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        BatchAnalyzer analyzer =
+            new BatchAnalyzer(3, depth, 0, new TranspositionTable(1));
+        assertEquals("positions analyzed", positions.length,
+                     analyzer.analyze(reader(text.toString()), out));
+
+        String[] lines = bytes.toString().split("\n");
+        assertEquals("one line per position", positions.length,
+                     lines.length);
+        for (int i = 0; i < positions.length; i += 1) {
+            String[] words = lines[i].trim().split(" ");
+            assertEquals("input order", Integer.toString(i + 1), words[0]);
+            if (positions[i] == null) {
+                assertEquals("game over", "over black",
+                             words[1] + " " + words[2]);
+            } else {
+                assertEquals("fields", 4, words.length);
+                assertTrue("legal move " + lines[i],
+                           positions[i].isLegal(mv(words[1])));
+                assertEquals("depth", Integer.toString(depth), words[3]);
+            }
+        }
+
+        try {
+            analyzer.analyze(reader(format(new Board()) + "bbbb\n"),
+                             new PrintStream(new ByteArrayOutputStream()));
+            fail("accepted a malformed row");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+}
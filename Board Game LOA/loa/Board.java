@@ -7,6 +7,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Formatter;
 import java.util.List;
+import java.util.Random;
 
 import java.util.regex.Pattern;
 
@@ -42,9 +43,9 @@ class Board {
     }
 
     /** A Board whose initial contents and state are copied from
-     *  BOARD. */
+     *  BOARD.  This is cheap (see copyFrom), so searching threads and
+     *  displays may take their own copies freely. */
     Board(Board board) {
-        this();
         copyFrom(board);
     }
 
@@ -53,15 +54,17 @@ class Board {
         for (int r = 0; r < BOARD_SIZE; r += 1) {
             for (int c = 0; c < BOARD_SIZE; c += 1) {
                 Square thisSquare = Square.sq(c, r);
-                set(thisSquare, contents[r][c]);
+                put(thisSquare, contents[r][c]);
             }
         }
         _turn = side;
         _winner = null;
         _winnerKnown = false;
-        _moves.clear();
+        _history = null;
+        _counts = null;
         _subsetsInitialized = false;
         _moveLimit = DEFAULT_MOVE_LIMIT;
+        markStart();
     }
 
     /** Set me to the initial configuration. */
@@ -69,21 +72,31 @@ class Board {
         initialize(INITIAL_PIECES, BP);
     }
 
-    /** Set my state to a copy of BOARD. */
+    /** Set my state to a copy of BOARD.  The contents are copied
+     *  directly, and the move history is shared with BOARD rather than
+     *  copied, so the cost does not depend on the number of moves made. */
     void copyFrom(Board board) {
         if (board == this) {
             return;
         }
-        _moves.clear();
-        _moves.addAll(board._moves);
+        System.arraycopy(board._board, 0, _board, 0, _board.length);
+        System.arraycopy(board._blackLines, 0, _blackLines, 0,
+                         Lines.NUM_LINES);
+        System.arraycopy(board._whiteLines, 0, _whiteLines, 0,
+                         Lines.NUM_LINES);
+        _history = board._history;
+        _counts = null;
         _turn = board._turn;
+        System.arraycopy(board._hashes, 0, _hashes, 0, Symmetry.COUNT);
+        _moveLimit = board._moveLimit;
+        _winnerKnown = board._winnerKnown;
+        _winner = board._winner;
+        _repetitionLimit = board._repetitionLimit;
+        _startBlack = board._startBlack;
+        _startWhite = board._startWhite;
+        _startTurn = board._startTurn;
+        _startHistory = board._startHistory;
         _subsetsInitialized = false;
-        for (int r = 0; r < BOARD_SIZE; r += 1) {
-            for (int c = 0; c < BOARD_SIZE; c += 1) {
-                Square thisSquare = Square.sq(c, r);
-                set(thisSquare, board.get(thisSquare), null);
-            }
-        }
     }
 
     /** Return the contents of the square at SQ. */
@@ -92,7 +105,9 @@ class Board {
     }
 
     /** Set the square at SQ to V and set the side that is to move next
-     *  to NEXT, if NEXT is not null. */
+     *  to NEXT, if NEXT is not null.  The resulting position becomes my
+     *  start position (see startBitboard), since the moves made before it
+     *  no longer lead to it. */
     void set(Square sq, Piece v, Piece next) {
         if (v != BP && v != WP && v != EMP) {
             throw new IllegalArgumentException("Wrong piece color.");
@@ -100,10 +115,37 @@ class Board {
         if (next != BP && next != WP && next != EMP && next != null) {
             throw new IllegalArgumentException("Wrong next turn side.");
         }
-        _board[sq.index()] = v;
+        put(sq, v);
         if (next != null) {
             _turn = next;
         }
+        markStart();
+    }
+
+    /** Set the square at SQ to V, maintaining the hashes and line
+     *  occupancies. */
+    private void put(Square sq, Piece v) {
+        Piece old = _board[sq.index()];
+        for (int sym = 0; sym < Symmetry.COUNT; sym += 1) {
+            _hashes[sym] ^= symmetricKey(sym, sq, old)
+                ^ symmetricKey(sym, sq, v);
+        }
+        if (old != v) {
+            for (int a = 0; a < Lines.AXES; a += 1) {
+                int line = Lines.line(sq, a), bit = 1 << Lines.position(sq, a);
+                if (old == BP) {
+                    _blackLines[line] ^= bit;
+                } else if (old == WP) {
+                    _whiteLines[line] ^= bit;
+                }
+                if (v == BP) {
+                    _blackLines[line] ^= bit;
+                } else if (v == WP) {
+                    _whiteLines[line] ^= bit;
+                }
+            }
+        }
+        _board[sq.index()] = v;
         _subsetsInitialized = false;
     }
 
@@ -113,6 +155,41 @@ class Board {
         set(sq, v, null);
     }
 
+    /** Record my current position as my start position. */
+    private void markStart() {
+        _startBlack = bitboard(BP);
+        _startWhite = bitboard(WP);
+        _startTurn = _turn;
+        _startHistory = _history;
+    }
+
+    /** Return a mask (as for bitboard) of the squares containing SIDE in
+     *  my start position: the position after the last initialize or set,
+     *  from which the moves in movesSinceStart() were made. */
+    long startBitboard(Piece side) {
+        return side == BP ? _startBlack : side == WP ? _startWhite : 0;
+    }
+
+    /** Return the side to move in my start position. */
+    Piece startTurn() {
+        return _startTurn;
+    }
+
+    /** Return the moves made since my start position, in order, or null
+     *  if moves made before it have since been retracted, so that my
+     *  position no longer follows from it. */
+    List<Move> movesSinceStart() {
+        int start = _startHistory == null ? 0 : _startHistory.size;
+        History h = _history;
+        while (h != null && h.size > start) {
+            h = h.previous;
+        }
+        if (h != _startHistory) {
+            return null;
+        }
+        return moves().subList(start, movesMade());
+    }
+
     /** Set limit on number of moves by each side that results in a tie to
      *  LIMIT, where 2 * LIMIT > movesMade(). */
     void setMoveLimit(int limit) {
@@ -127,6 +204,40 @@ class Board {
         return _moveLimit;
     }
 
+    /** Declare a tie when a position occurs for the LIMITth time, or never
+     *  if LIMIT is 0.  The limit is kept when the board is cleared.  A game
+     *  already tied by the move limit stays tied. */
+    void setRepetitionLimit(int limit) {
+        if (limit < 0 || limit == 1) {
+            throw new IllegalArgumentException("bad repetition limit");
+        }
+        _repetitionLimit = limit;
+        if (_moveLimit > 0) {
+            _winnerKnown = false;
+        }
+    }
+
+    /** Return the number of times the current position (contents and side
+     *  to move) occurred earlier in this game.  Positions before the last
+     *  capture have more pieces than the current one, so they never
+     *  match and need not be excluded.  The hashes of the earlier
+     *  positions are counted in _counts, built from the history on first
+     *  use and then kept up to date by makeMove and retract, so this takes
+     *  constant time at each node of a search. */
+    int repetitions() {
+        if (_counts == null) {
+            long[] hashes = new long[movesMade()];
+            for (History h = _history; h != null; h = h.previous) {
+                hashes[h.size - 1] = h.hash;
+            }
+            _counts = new HashCounts();
+            for (long hash : hashes) {
+                _counts.push(hash);
+            }
+        }
+        return _counts.count(hash());
+    }
+
 
     /** Assuming isLegal(MOVE), make MOVE. This function assumes that
      *  MOVE.isCapture() will return false.  If it saves the move for
@@ -137,26 +248,29 @@ class Board {
         assert !move.isCapture();
 
         _moveLimit -= 1;
-        if (_moveLimit == 0) {
-            _winner = EMP;
-            _winnerKnown = true;
-            return;
-        }
 
+        long hash = hash();
         Square from = move.getFrom();
         Square to = move.getTo();
         Piece moved = _board[from.index()];
         Piece captured = _board[to.index()];
 
         if (captured != EMP) {
-            set(to, EMP);
+            put(to, EMP);
             move = move.captureMove();
         }
-        set(from, EMP);
-        set(to, moved);
-        _moves.add(move);
+        put(from, EMP);
+        put(to, moved);
+        _history = new History(move, hash, _history);
+        if (_counts != null) {
+            _counts.push(hash);
+        }
         _turn = _turn.opposite();
         _subsetsInitialized = false;
+        if (_moveLimit == 0) {
+            _winner = EMP;
+            _winnerKnown = true;
+        }
     }
 
     /** Retract (unmake) one move, returning to the state immediately before
@@ -164,7 +278,11 @@ class Board {
     void retract() {
         assert movesMade() > 0;
 
-        Move move = _moves.remove(_moves.size() - 1);
+        Move move = _history.move;
+        _history = _history.previous;
+        if (_counts != null) {
+            _counts.pop();
+        }
 
         Square to = move.getTo();
         Square from = move.getFrom();
@@ -178,8 +296,8 @@ class Board {
             captured = EMP;
         }
 
-        set(to, captured);
-        set(from, moved);
+        put(to, captured);
+        put(from, moved);
         _turn = _turn.opposite();
         _moveLimit += 1;
         _subsetsInitialized = false;
@@ -192,14 +310,68 @@ class Board {
         return _turn;
     }
 
+    /** Return a 64-bit Zobrist hash of the current position (contents and
+     *  side to move).  Equal positions have equal hashes, and the value is
+     *  maintained incrementally, so this is cheap enough to call at every
+     *  node of a search. */
+    long hash() {
+        return hash(Symmetry.IDENTITY);
+    }
+
+    /** Return the hash() of the image of my position under symmetry SYM
+     *  (see Symmetry), which is also maintained incrementally. */
+    long hash(int sym) {
+        long hash = _hashes[sym];
+        return Symmetry.apply(sym, _turn) == WP
+            ? hash ^ WHITE_TO_MOVE_KEY : hash;
+    }
+
+    /** Return the symmetry that maps my position to its canonical form:
+     *  the image under any symmetry with the smallest hash.  Positions
+     *  that are images of each other have the same canonical form. */
+    int canonicalSymmetry() {
+        int best = Symmetry.IDENTITY;
+        long bestHash = hash(best);
+        for (int sym = 1; sym < Symmetry.COUNT; sym += 1) {
+            long hash = hash(sym);
+            if (hash < bestHash) {
+                best = sym;
+                bestHash = hash;
+            }
+        }
+        return best;
+    }
+
+    /** Return the hash of the canonical form of my position, which is
+     *  the same for all positions that are images of each other under a
+     *  symmetry. */
+    long canonicalHash() {
+        return hash(canonicalSymmetry());
+    }
+
     /** Return true iff FROM - TO is a legal move for the player currently on
      *  move. */
     boolean isLegal(Square from, Square to) {
-        Move thisMove = Move.mv(from, to);
-        return !blocked(from, to)
-                && _board[from.index()] != null
-                && _board[from.index()] == _turn
-                && thisMove.length() == pieceAlong(thisMove);
+        if (_board[from.index()] != _turn || !from.isValidMove(to)) {
+            return false;
+        }
+        int axis = Lines.axis(from, to);
+        int dests = destinations(from, axis);
+        int pos = Lines.position(to, axis);
+        return (dests & Lines.NONE) == pos || dests >> 4 == pos;
+    }
+
+    /** Return the destinations (as for Lines.destinations) of the piece
+     *  on FROM, which must belong to the side to move, along AXIS. */
+    private int destinations(Square from, int axis) {
+        int line = Lines.line(from, axis);
+        if (_turn == BP) {
+            return Lines.destinations(_blackLines[line], _whiteLines[line],
+                                      Lines.position(from, axis));
+        } else {
+            return Lines.destinations(_whiteLines[line], _blackLines[line],
+                                      Lines.position(from, axis));
+        }
     }
 
     /** Return true iff MOVE is legal for the player currently on move.
@@ -211,31 +383,41 @@ class Board {
     /** Return a sequence of all legal moves from this position. */
     List<Move> legalMoves() {
         List<Move> result = new ArrayList<>();
-        String curr = _turn.abbrev();
-        Square thisSquare, thatSqaure;
-        for (int r0 = 0; r0 < BOARD_SIZE; r0 += 1) {
-            for (int c0 = 0; c0 < BOARD_SIZE; c0 += 1) {
-                thisSquare = Square.sq(c0, r0);
-
-                if (_board[thisSquare.index()].abbrev().equals(curr)) {
-                    for (int r1 = 0; r1 < BOARD_SIZE; r1 += 1) {
-                        for (int c1 = 0; c1 < BOARD_SIZE; c1 += 1) {
-                            if (c1 != c0 || r1 != r0) {
-                                thatSqaure = Square.sq(c1, r1);
-                                if (thisSquare.isValidMove(thatSqaure)
-                                        && isLegal(thisSquare, thatSqaure)) {
-                                    Move move = Move.mv(thisSquare, thatSqaure);
-                                    result.add(move);
-                                }
-                            }
-                        }
-                    }
+        for (Square from : ALL_SQUARES) {
+            if (_board[from.index()] != _turn) {
+                continue;
+            }
+            int first = result.size();
+            for (int a = 0; a < Lines.AXES; a += 1) {
+                int line = Lines.line(from, a);
+                int dests = destinations(from, a);
+                if ((dests & Lines.NONE) < Lines.length(line)) {
+                    addMove(result, first,
+                            from, Lines.square(line, dests & Lines.NONE));
+                }
+                if (dests >> 4 < Lines.length(line)) {
+                    addMove(result, first,
+                            from, Lines.square(line, dests >> 4));
                 }
             }
         }
         return result;
     }
 
+    /** Add the move FROM-TO to the end of MOVES, keeping the moves from
+     *  position FIRST on in order of destination index, so that the
+     *  order of legalMoves() does not depend on how it is computed. */
+    private static void addMove(List<Move> moves, int first,
+                                Square from, Square to) {
+        int k = moves.size();
+        moves.add(null);
+        while (k > first && moves.get(k - 1).getTo().index() > to.index()) {
+            moves.set(k, moves.get(k - 1));
+            k -= 1;
+        }
+        moves.set(k, Move.mv(from, to));
+    }
+
     /** Return true iff the game is over (either player has all his
      *  pieces continguous or there is a tie). */
     boolean gameOver() {
@@ -262,6 +444,10 @@ class Board {
             } else if (_blackRegionSizes.size() == 1) {
                 _winner = BP;
                 _winnerKnown = true;
+            } else if (_repetitionLimit > 0
+                       && repetitions() + 1 >= _repetitionLimit) {
+                _winner = EMP;
+                _winnerKnown = true;
             } else {
                 _winner = null;
             }
@@ -269,11 +455,33 @@ class Board {
         return _winner;
     }
 
+    /** Return the moves made on this board (and not retracted), in
+     *  order. */
+    List<Move> moves() {
+        Move[] moves = new Move[movesMade()];
+        for (History h = _history; h != null; h = h.previous) {
+            moves[h.size - 1] = h.move;
+        }
+        return Collections.unmodifiableList(Arrays.asList(moves));
+    }
+
+    /** Return a mask of the squares containing SIDE, in which bit
+     *  S.index() is set iff square S contains SIDE. */
+    long bitboard(Piece side) {
+        long mask = 0;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            if (_board[i] == side) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+
     /** Return the total number of moves that have been made (and not
      *  retracted).  Each valid call to makeMove with a normal move increases
      *  this number by 1. */
     int movesMade() {
-        return _moves.size();
+        return _history == null ? 0 : _history.size;
     }
 
     @Override
@@ -302,42 +510,6 @@ class Board {
         return out.toString();
     }
 
-    /** Return true if a move from FROM to TO is blocked by an opposing
-     *  piece or by a friendly piece on the target square. */
-    private boolean blocked(Square from, Square to) {
-        if (from == to) {
-            throw new IllegalArgumentException("from square is to square.");
-        }
-
-        int dir = from.direction(to);
-        Piece thisPiece = _board[from.index()];
-        Piece target = _board[to.index()];
-        if (thisPiece.abbrev().equals(target.abbrev())) {
-            return true;
-        }
-
-        int fromC = from.col();
-        int fromR = from.row();
-        int toC = to.col();
-        int toR = to.row();
-        int dc = from.getDC(dir);
-        int dr = from.getDR(dir);
-
-        fromC += dc;
-        fromR += dr;
-
-        while (fromC != toC || fromR != toR) {
-            Square currSquare = Square.sq(fromC, fromR);
-            if (_board[currSquare.index()].abbrev()
-                    .equals(_turn.opposite().abbrev())) {
-                return true;
-            }
-            fromC += dc;
-            fromR += dr;
-        }
-        return false;
-    }
-
     /** Return the size of the as-yet unvisited cluster of squares
      *  containing P at and adjacent to SQ.  VISITED indicates squares that
      *  have already been processed or are in different clusters.  Update
@@ -493,6 +665,67 @@ class Board {
         return sidePieces;
     }
 
+    /** Return the Zobrist key for piece P on SQ (0 for an empty or not
+     *  yet initialized square). */
+    private static long squareKey(Square sq, Piece p) {
+        if (p == BP) {
+            return BLACK_KEYS[sq.index()];
+        } else if (p == WP) {
+            return WHITE_KEYS[sq.index()];
+        } else {
+            return 0;
+        }
+    }
+
+    /** Return the Zobrist key of the image of P on SQ under symmetry
+     *  SYM. */
+    private static long symmetricKey(int sym, Square sq, Piece p) {
+        if (p == BP) {
+            return SYMMETRIC_BLACK_KEYS[sym][sq.index()];
+        } else if (p == WP) {
+            return SYMMETRIC_WHITE_KEYS[sym][sq.index()];
+        } else {
+            return 0;
+        }
+    }
+
+    /** Seed for the Zobrist keys.  Fixed so that hashes are the same from
+     *  one run to the next. */
+    private static final long ZOBRIST_SEED = 0x4c4f41L;
+
+    /** Zobrist keys for black and white pieces, indexed by Square.index(). */
+    private static final long[]
+        BLACK_KEYS = new long[NUM_SQUARES],
+        WHITE_KEYS = new long[NUM_SQUARES];
+
+    /** Zobrist key XORed into the hash when white is to move. */
+    private static final long WHITE_TO_MOVE_KEY;
+
+    /** SYMMETRIC_BLACK_KEYS[s][q] is the key of the image of a black
+     *  piece on the square with index q under symmetry s, and similarly
+     *  for SYMMETRIC_WHITE_KEYS. */
+    private static final long[][]
+        SYMMETRIC_BLACK_KEYS = new long[Symmetry.COUNT][NUM_SQUARES],
+        SYMMETRIC_WHITE_KEYS = new long[Symmetry.COUNT][NUM_SQUARES];
+
+    static {
+        Random keys = new Random(ZOBRIST_SEED);
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            BLACK_KEYS[i] = keys.nextLong();
+            WHITE_KEYS[i] = keys.nextLong();
+        }
+        WHITE_TO_MOVE_KEY = keys.nextLong();
+        for (int sym = 0; sym < Symmetry.COUNT; sym += 1) {
+            for (Square sq : ALL_SQUARES) {
+                Square image = Symmetry.apply(sym, sq);
+                SYMMETRIC_BLACK_KEYS[sym][sq.index()] =
+                    squareKey(image, Symmetry.apply(sym, BP));
+                SYMMETRIC_WHITE_KEYS[sym][sq.index()] =
+                    squareKey(image, Symmetry.apply(sym, WP));
+            }
+        }
+    }
+
     /** The standard initial configuration for Lines of Action (bottom row
      *  first). */
     static final Piece[][] INITIAL_PIECES = {
@@ -509,18 +742,135 @@ class Board {
     /** Current contents of the board.  Square S is at _board[S.index()]. */
     private final Piece[] _board = new Piece[BOARD_SIZE  * BOARD_SIZE];
 
-    /** List of all unretracted moves on this board, in order. */
-    private final ArrayList<Move> _moves = new ArrayList<>();
+    /** An immutable list of moves, most recent first, each with the hash()
+     *  of the position it was made from.  Boards copied from one another
+     *  share the part of their histories they have in common. */
+    private static class History {
+        /** The list whose first element is MOVE, made from the position
+         *  with hash HASH, followed by PREVIOUS. */
+        History(Move move, long hash, History previous) {
+            this.move = move;
+            this.hash = hash;
+            this.previous = previous;
+            this.size = previous == null ? 1 : previous.size + 1;
+        }
+
+        /** The most recent move. */
+        private final Move move;
+        /** The hash() of the position before it. */
+        private final long hash;
+        /** The moves before it, or null if none. */
+        private final History previous;
+        /** Number of moves in this list. */
+        private final int size;
+    }
+
+    /** A multiset of position hashes, added and removed in stack order:
+     *  a hash table whose buckets are chains through a stack of entries,
+     *  so that the last entry pushed is always first in its chain. */
+    private static class HashCounts {
+        /** Add HASH. */
+        void push(long hash) {
+            if (_size == _keys.length) {
+                grow();
+            }
+            int bucket = bucket(hash);
+            _keys[_size] = hash;
+            _next[_size] = _heads[bucket];
+            _heads[bucket] = _size;
+            _size += 1;
+        }
+
+        /** Remove the hash most recently pushed and not yet popped. */
+        void pop() {
+            _size -= 1;
+            _heads[bucket(_keys[_size])] = _next[_size];
+        }
+
+        /** Return the number of times HASH is present. */
+        int count(long hash) {
+            int count = 0;
+            for (int i = _heads[bucket(hash)]; i >= 0; i = _next[i]) {
+                if (_keys[i] == hash) {
+                    count += 1;
+                }
+            }
+            return count;
+        }
+
+        /** Return the bucket of HASH. */
+        private int bucket(long hash) {
+            return (int) (hash ^ (hash >>> 32)) & (_heads.length - 1);
+        }
+
+        /** Double my capacity, rebuilding the chains. */
+        private void grow() {
+            int size = _size;
+            long[] keys = _keys;
+            _keys = new long[2 * keys.length];
+            _next = new int[_keys.length];
+            _heads = new int[2 * _keys.length];
+            Arrays.fill(_heads, -1);
+            _size = 0;
+            for (int i = 0; i < size; i += 1) {
+                push(keys[i]);
+            }
+        }
+
+        /** The hashes present, in the order pushed. */
+        private long[] _keys = new long[INITIAL_CAPACITY];
+        /** _next[i] is the entry below entry i in its chain, or -1. */
+        private int[] _next = new int[INITIAL_CAPACITY];
+        /** The top entry of each chain, or -1. */
+        private int[] _heads = initialHeads();
+        /** Number of hashes present. */
+        private int _size;
+
+        /** Return empty chain heads for INITIAL_CAPACITY entries. */
+        private static int[] initialHeads() {
+            int[] heads = new int[2 * INITIAL_CAPACITY];
+            Arrays.fill(heads, -1);
+            return heads;
+        }
+
+        /** Initial number of entries. */
+        private static final int INITIAL_CAPACITY = 64;
+    }
+
+    /** All unretracted moves on this board, most recent first, or null if
+     *  there are none. */
+    private History _history;
+    /** The hashes of the positions in _history, or null if not yet built
+     *  (see repetitions). */
+    private HashCounts _counts;
     /** Current side on move. */
     private Piece _turn;
+    /** Masks of the black and white pieces in my start position. */
+    private long _startBlack, _startWhite;
+    /** Side to move in my start position. */
+    private Piece _startTurn;
+    /** Value of _history in my start position. */
+    private History _startHistory;
+    /** Zobrist hashes of the images of the contents of _board under each
+     *  symmetry, not including _turn. */
+    private final long[] _hashes = new long[Symmetry.COUNT];
     /** Limit on number of moves before tie is declared.  */
     private int _moveLimit;
+    /** Number of occurrences of a position that is a tie, or 0 for no
+     *  limit. */
+    private int _repetitionLimit;
     /** True iff the value of _winner is known to be valid. */
     private boolean _winnerKnown;
     /** Cached value of the winner (BP, WP, EMP (for tie), or null (game still
      *  in progress).  Use only if _winnerKnown. */
     private Piece _winner;
 
+    /** Occupancy masks of each line (see Lines) by black and by white
+     *  pieces, maintained by set. */
+    private final int[]
+        _blackLines = new int[Lines.NUM_LINES],
+        _whiteLines = new int[Lines.NUM_LINES];
+
     /** True iff subsets computation is up-to-date. */
     private boolean _subsetsInitialized;
 
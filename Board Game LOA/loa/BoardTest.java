@@ -2,6 +2,8 @@
  * University of California.  All rights reserved. */
 package loa;
 
+import java.util.List;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 import static loa.Piece.*;
@@ -190,6 +192,60 @@ public class BoardTest {
         System.out.println(board.winner());
     }
 
+    @Test
+    public void testHash() {
+        Board b0 = new Board(BOARD1, BP);
+        Board b1 = new Board(BOARD1, BP);
+        assertEquals("equal boards, equal hashes", b0.hash(), b1.hash());
+        b1.makeMove(mv("f3-d5"));
+        assertNotEquals("hash after f3-d5", b0.hash(), b1.hash());
+        b1.retract();
+        assertEquals("hash restored after retraction", b0.hash(), b1.hash());
+        assertNotEquals("side to move is hashed",
+                        b0.hash(), new Board(BOARD1, WP).hash());
+    }
+
+    @Test
+    public void testCanonicalHash() {
+        Piece[][] mirror = new Piece[8][8], swapped = new Piece[8][8];
+        for (int r = 0; r < 8; r += 1) {
+            for (int c = 0; c < 8; c += 1) {
+                mirror[r][7 - c] = BOARD1[r][c];
+                swapped[c][r] = BOARD1[r][c] == EMP
+                    ? EMP : BOARD1[r][c].opposite();
+            }
+        }
+        Board b0 = new Board(BOARD1, BP);
+        assertEquals("mirror image", b0.canonicalHash(),
+                     new Board(mirror, BP).canonicalHash());
+        assertEquals("transposed, colors exchanged", b0.canonicalHash(),
+                     new Board(swapped, WP).canonicalHash());
+        assertNotEquals("side to move", b0.canonicalHash(),
+                        new Board(mirror, WP).canonicalHash());
+        Board b1 = new Board(BOARD1, BP);
+        b1.makeMove(mv("f3-d5"));
+        Board image = new Board(mirror, BP);
+        image.makeMove(Symmetry.apply(1, mv("f3-d5")));
+        assertEquals("images after a move", b1.canonicalHash(),
+                     image.canonicalHash());
+        assertEquals("image hash maintained", b1.hash(1), image.hash());
+    }
+
+    @Test
+    public void testCopy() {
+        Board b0 = new Board(BOARD1, BP);
+        b0.makeMove(mv("f3-d5"));
+        Board b1 = new Board(b0);
+        assertEquals("copy equals original", b0, b1);
+        assertEquals("copy has same hash", b0.hash(), b1.hash());
+        assertEquals("copy has same history", b0.moves(), b1.moves());
+        b1.retract();
+        assertEquals("original unaffected by copy", 1, b0.movesMade());
+        assertEquals("copy retracted", new Board(BOARD1, BP), b1);
+        assertEquals("copy hash restored",
+                     new Board(BOARD1, BP).hash(), b1.hash());
+    }
+
     static final Piece[][] BOARD7 = {
             { EMP, BP,  BP,  BP,  BP,  BP,  BP,  EMP },
             { WP,  WP,  EMP, EMP, EMP, EMP, EMP, WP },
@@ -200,6 +256,84 @@ public class BoardTest {
             { WP,  EMP, EMP, EMP, EMP, EMP, EMP, WP },
             { EMP, BP,  BP,  BP,  BP,  BP,  BP,  EMP }
     };
+
+    @Test
+    public void testRepetition() {
+        Board b = new Board();
+        String[] cycle = { "b1-b3", "a2-c2", "b3-b1", "c2-a2" };
+        for (int k = 0; k < 2; k += 1) {
+            for (String move : cycle) {
+                assertNull(b.winner());
+                b.makeMove(mv(move));
+            }
+            assertEquals(k + 1, b.repetitions());
+        }
+        b.setRepetitionLimit(3);
+        assertEquals(EMP, b.winner());
+        Board copy = new Board(b);
+        assertEquals(EMP, copy.winner());
+        b.retract();
+        assertEquals(1, b.repetitions());
+        assertNull(b.winner());
+        b.setRepetitionLimit(0);
+        b.makeMove(mv("c2-a2"));
+        assertNull(b.winner());
+    }
+
+    @Test
+    public void testRepetitionLimitKeepsMoveLimitTie() {
+        Board b = new Board();
+        b.setMoveLimit(1);
+        b.makeMove(mv("b1-b3"));
+        b.makeMove(mv("a2-c2"));
+        assertEquals(EMP, b.winner());
+        b.setRepetitionLimit(3);
+        assertEquals(EMP, b.winner());
+    }
+
+    @Test
+    public void testStartPosition() {
+        Board b = new Board();
+        b.makeMove(mv("b1-b3"));
+        b.set(sq("h8"), BP, WP);
+        b.makeMove(mv("a2-c2"));
+        assertEquals(List.of(mv("a2-c2")), b.movesSinceStart());
+        assertEquals(WP, b.startTurn());
+        assertTrue((b.startBitboard(BP) & 1L << sq("h8").index()) != 0);
+        assertTrue((b.startBitboard(WP) & 1L << sq("a2").index()) != 0);
+        GameRecord record = GameRecord.of(b);
+        Board replay = record.initialBoard();
+        replay.makeMove(record.move(0));
+        assertEquals(b, replay);
+        b.retract();
+        b.retract();
+        b.makeMove(mv("b1-b3"));
+        assertNull(b.movesSinceStart());
+        assertNull(GameRecord.of(b));
+    }
+
+    @Test
+    public void testLegalMovesAgree() {
+        for (Piece[][] contents : new Piece[][][] { BOARD1, BOARD7 }) {
+            for (Piece side : new Piece[] { BP, WP }) {
+                Board b = new Board(contents, side);
+                List<Move> legal = b.legalMoves();
+                for (Square from : Square.ALL_SQUARES) {
+                    for (Square to : Square.ALL_SQUARES) {
+                        Move move = Move.mv(from, to);
+                        assertEquals(move + " legal", move != null
+                                     && legal.contains(move),
+                                     move != null && b.isLegal(move));
+                    }
+                }
+                for (Move move : legal) {
+                    assertEquals(move + " length", move.length(),
+                                 b.pieceAlong(move));
+                }
+            }
+        }
+    }
+
     @Test
     public void testLegalMoves() {
         Board b2 = new Board(BOARD1, BP);
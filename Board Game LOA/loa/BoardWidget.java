@@ -9,6 +9,7 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 
 import static loa.Piece.*;
@@ -32,7 +33,8 @@ class BoardWidget extends Pad {
         LIGHT_SQUARE_COLOR = new Color(1.0f, 0.805f, 0.617f),
         BORDER_COLOR = new Color(0.408f, 0.271f, 0.138f),
         GRID_LINE_COLOR = Color.black,
-        PIECE_BOUNDARY_COLOR = Color.black;
+        PIECE_BOUNDARY_COLOR = Color.black,
+        HINT_COLOR = new Color(0.2f, 0.4f, 1.0f);
 
     /** Width of border around board (pixels). */
     static final int BORDER_WIDTH = 6;
@@ -53,7 +55,8 @@ class BoardWidget extends Pad {
     static final BasicStroke
         BORDER_STROKE = new BasicStroke(BORDER_WIDTH, BasicStroke.CAP_ROUND,
                                         BasicStroke.JOIN_ROUND),
-        PIECE_BOUNDARY_STROKE = new BasicStroke(1.0f);
+        PIECE_BOUNDARY_STROKE = new BasicStroke(1.0f),
+        HINT_STROKE = new BasicStroke(2.0f);
 
     /** A graphical representation of a Loa board that sends commands
      *  derived from mouse clicks to COMMANDS.  */
@@ -87,14 +90,34 @@ class BoardWidget extends Pad {
 
     }
 
+    /** Draw the board on G.  Only the squares within G's clip region
+     *  (normally those passed to repaintSquare) are drawn. */
     @Override
     public synchronized void paintComponent(Graphics2D g) {
         drawGrid(g);
+        Rectangle clip = g.getClipBounds();
         for (Square sq : Square.ALL_SQUARES) {
-            drawPiece(g, sq);
+            if (clip == null
+                || clip.intersects(cx(sq), cy(sq),
+                                   SQUARE_SIDE, SQUARE_SIDE)) {
+                drawPiece(g, sq);
+            }
+        }
+        if (_hint != null) {
+            g.setColor(HINT_COLOR);
+            g.setStroke(HINT_STROKE);
+            for (Square sq : new Square[] { _hint.getFrom(), _hint.getTo() }) {
+                g.drawRect(cx(sq) + 1, cy(sq) + 1,
+                           SQUARE_SIDE - 2, SQUARE_SIDE - 2);
+            }
         }
     }
 
+    /** Schedule SQ to be redrawn. */
+    private void repaintSquare(Square sq) {
+        me.repaint(cx(sq), cy(sq), SQUARE_SIDE, SQUARE_SIDE);
+    }
+
     /** Draw the contents of S on G. */
     private void drawPiece(Graphics2D g, Square s) {
         Piece p = _board.get(s);
@@ -161,10 +184,32 @@ class BoardWidget extends Pad {
         }
     }
 
-    /** Revise the displayed board according to BOARD. */
+    /** Revise the displayed board according to BOARD, redrawing only the
+     *  squares whose contents change. */
     synchronized void update(Board board) {
+        for (Square sq : Square.ALL_SQUARES) {
+            if (_board.get(sq) != board.get(sq)) {
+                repaintSquare(sq);
+            }
+        }
         _board.copyFrom(board);
-        repaint();
+    }
+
+    /** Mark the squares of MOVE (none if null) as the move an automated
+     *  player currently prefers, replacing any previous such move. */
+    synchronized void setHint(Move move) {
+        if (_hint == move) {
+            return;
+        }
+        if (_hint != null) {
+            repaintSquare(_hint.getFrom());
+            repaintSquare(_hint.getTo());
+        }
+        _hint = move;
+        if (_hint != null) {
+            repaintSquare(_hint.getFrom());
+            repaintSquare(_hint.getTo());
+        }
     }
 
     /** Turn on move collection iff COLLECTING, and clear any current
@@ -210,4 +255,7 @@ class BoardWidget extends Pad {
     /** The clicked square. */
     private Square _clickedSquare;
 
+    /** The move an automated player currently prefers, or null. */
+    private Move _hint;
+
 }
@@ -0,0 +1,124 @@
+package loa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The registry of engines: kinds of automated Player, known by name.
+ *  An engine is a factory for Player templates (see Player.create),
+ *  configured by parameters given as KEY=VALUE words, so that the auto
+ *  command can choose among engines, and their search and evaluation
+ *  settings, while the program runs.  For example,
+ *        auto white engine=ab depth=6 threads=8 tt=256
+ *  makes white an alpha-beta searcher.  Engines registered by default
+ *  are "ab" (MachinePlayer) and "random" (RandomPlayer).
+ *  @author Qianfei(Ben) Hu
+ */
+class Engines {
+
+    /** The engine used when none is named. */
+    static final String DEFAULT_ENGINE = "ab";
+
+    /** Makes the templates of one engine. */
+    interface Factory {
+        /** Return a template configured by PARAMS, based where sensible
+         *  on DEFAULTS, the game's usual automated player (or null if
+         *  there is none).  Throws IllegalArgumentException if PARAMS
+         *  contains a parameter the engine does not take or a bad
+         *  value. */
+        Player template(Player defaults, Map<String, String> params);
+    }
+
+    /** Register FACTORY as the engine NAME, replacing any engine already
+     *  of that name. */
+    static synchronized void register(String name, Factory factory) {
+        ENGINES.put(name, factory);
+    }
+
+    /** Return the names of the registered engines, in the order in which
+     *  they were first registered. */
+    static synchronized List<String> names() {
+        return new ArrayList<>(ENGINES.keySet());
+    }
+
+    /** Return a template of the engine NAME configured by PARAMS, based
+     *  on DEFAULTS (see Factory.template). */
+    static Player template(String name, Player defaults,
+                           Map<String, String> params) {
+        Factory factory;
+        synchronized (Engines.class) {
+            factory = ENGINES.get(name);
+        }
+        if (factory == null) {
+            throw new IllegalArgumentException("unknown engine: " + name);
+        }
+        return factory.template(defaults, params);
+    }
+
+    /** Return the parameters given by WORDS, each of the form
+     *  KEY=VALUE. */
+    static Map<String, String> parse(String... words) {
+        Map<String, String> params = new HashMap<>();
+        for (String word : words) {
+            int eq = word.indexOf('=');
+            if (eq <= 0 || eq == word.length() - 1) {
+                throw new IllegalArgumentException("bad engine parameter: "
+                                                   + word);
+            }
+            params.put(word.substring(0, eq), word.substring(eq + 1));
+        }
+        return params;
+    }
+
+    /** Check that every key of PARAMS is one of KEYS. */
+    static void checkParams(Map<String, String> params, String... keys) {
+        for (String key : params.keySet()) {
+            boolean known = false;
+            for (String k : keys) {
+                known |= k.equals(key);
+            }
+            if (!known) {
+                throw new IllegalArgumentException("unknown engine "
+                                                   + "parameter: " + key);
+            }
+        }
+    }
+
+    /** Return the value of the numeral PARAMS[KEY], or DFLT if there
+     *  is none.  The value must be at least MIN. */
+    static int intParam(Map<String, String> params, String key,
+                        int dflt, int min) {
+        String value = params.get(key);
+        if (value == null) {
+            return dflt;
+        }
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= min) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw new IllegalArgumentException("bad value for " + key + ": "
+                                           + value);
+    }
+
+    /** The registered engines, by name. */
+    private static final Map<String, Factory> ENGINES =
+        new LinkedHashMap<>();
+
+    static {
+        register(DEFAULT_ENGINE, (defaults, params) -> {
+            MachinePlayer base = defaults instanceof MachinePlayer
+                ? (MachinePlayer) defaults : new MachinePlayer();
+            return base.configure(params);
+        });
+        register("random", (defaults, params) -> {
+            checkParams(params);
+            return new RandomPlayer();
+        });
+    }
+}
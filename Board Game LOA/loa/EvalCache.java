@@ -0,0 +1,77 @@
+package loa;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** A fixed-size, direct-mapped cache of static evaluations, keyed by
+ *  Board.hash().  Each slot is a single long holding the high half of a
+ *  key and a 32-bit value, so a slot is always read and written whole and
+ *  the cache may be shared by any number of threads without locking.  A
+ *  new value simply replaces whatever was in its slot.
+ *  @author Qianfei(Ben) Hu
+ */
+class EvalCache {
+
+    /** Value returned by lookup for a key that is not cached. */
+    static final int MISSING = Integer.MIN_VALUE;
+
+    /** A cache of 2**BITS slots. */
+    EvalCache(int bits) {
+        _slots = new long[1 << bits];
+        _mask = _slots.length - 1;
+    }
+
+    /** Return the value cached for KEY, or MISSING if there is none. */
+    int lookup(long key) {
+        long slot = _slots[(int) key & _mask];
+        if ((slot & CHECK_MASK) == (key & CHECK_MASK) && slot != 0) {
+            _hits.increment();
+            return (int) slot;
+        }
+        _misses.increment();
+        return MISSING;
+    }
+
+    /** Cache VALUE for KEY. */
+    void put(long key, int value) {
+        _slots[(int) key & _mask] = (key & CHECK_MASK) | (value & VALUE_MASK);
+    }
+
+    /** Return the number of lookups that found a value. */
+    long hits() {
+        return _hits.sum();
+    }
+
+    /** Return the number of lookups that did not. */
+    long misses() {
+        return _misses.sum();
+    }
+
+    /** Return the fraction of lookups that found a value, or 0 if there
+     *  have been none. */
+    double hitRate() {
+        long hits = hits(), total = hits + misses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /** Remove all entries and reset the counters. */
+    void clear() {
+        for (int i = 0; i < _slots.length; i += 1) {
+            _slots[i] = 0;
+        }
+        _hits.reset();
+        _misses.reset();
+    }
+
+    /** Bits of a slot holding the (high half of the) key, and the
+     *  value. */
+    private static final long
+        CHECK_MASK = 0xffffffff00000000L, VALUE_MASK = 0xffffffffL;
+
+    /** The slots. */
+    private final long[] _slots;
+    /** Number of slots less one. */
+    private final int _mask;
+    /** Lookup counts. */
+    private final LongAdder _hits = new LongAdder(),
+        _misses = new LongAdder();
+}
@@ -16,6 +16,8 @@ import java.io.StringWriter;
 
 import java.util.concurrent.ArrayBlockingQueue;
 
+import javax.swing.SwingUtilities;
+
 import static loa.Piece.*;
 
 /** The GUI controller for a LOA board and buttons.
@@ -70,31 +72,46 @@ class GUI extends TopLevel implements View, Reporter {
                         "y", 10,
                         "height", 1,
                         "width", 3));
+        addLabel("", "engine",
+                 new LayoutSpec("x", 0,
+                                "y", 11,
+                                "height", 1,
+                                "width", 3));
 
     }
 
     /** Response to "Quit" button click. */
     private void quit(String dummy) {
-        _pendingCommands.offer("quit");
+        interrupt("quit");
     }
 
     /** Response to "New Game" button click. */
     private void newGame(String dummy) {
-        _pendingCommands.offer("new");
+        interrupt("new");
     }
 
     /** Response to "New Game" button click.
      * @param dummy a dummy argument.
      * */
     private void restart(String dummy) {
-        _pendingCommands.offer("new");
+        interrupt("new");
     }
 
     /** Response to "Undo" button click.
      * @param dummy a dummy argument.
      * */
     private void undo(String dummy) {
-        _pendingCommands.offer("undo");
+        interrupt("undo");
+    }
+
+    /** Queue COMMAND, first stopping any search in progress so that the
+     *  command takes effect without waiting for the engine. */
+    private void interrupt(String command) {
+        Game controller = _controller;
+        if (controller != null) {
+            controller.cancelSearch();
+        }
+        _pendingCommands.offer(command);
     }
 
     /** Response to "Manual Black" button click.
@@ -141,26 +158,43 @@ class GUI extends TopLevel implements View, Reporter {
         }
     }
 
+    /** Update the display from CONTROLLER.  The game's state is copied
+     *  on the calling (game) thread, and the display is changed from the
+     *  copy on the event-dispatch thread, so neither thread waits for the
+     *  other. */
     @Override
     public void update(Game controller) {
-        Board board = controller.getBoard();
-        _widget.update(board);
-
+        _controller = controller;
+        Board board = new Board(controller.getBoard());
+        String turn;
         if (board.winner() != null) {
-            setLabel("CurrentTurn",
-                     String.format("Winner: %s",
-                                   board.winner().fullName()));
+            turn = String.format("Winner: %s", board.winner().fullName());
         } else {
-            setLabel("CurrentTurn",
-                     String.format("To move: %s", board.turn().fullName()));
+            turn = String.format("To move: %s", board.turn().fullName());
         }
+        String state = String.format("Black: %s\t\t\tWhite: %s",
+                                     controller.manualBlack()
+                                     ? "Manual " : "Auto ",
+                                     controller.manualWhite()
+                                     ? "Manual" : "Auto");
+        SwingUtilities.invokeLater(() -> {
+            _widget.update(board);
+            _widget.setHint(null);
+            setLabel("CurrentTurn", turn);
+            setLabel("state", state);
+            setLabel("engine", "");
+        });
+    }
 
-        boolean manualWhite = controller.manualWhite(),
-            manualBlack = controller.manualBlack();
-
-        setLabel("state", String.format("Black: %s\t\t\tWhite: %s",
-                manualBlack ? "Manual " : "Auto ",
-                manualWhite ? "Manual" : "Auto"));
+    @Override
+    public void searchProgress(Move best, int depth, int value) {
+        String status =
+            String.format("Thinking: depth %d, best %s (%d)",
+                          depth, best, value);
+        SwingUtilities.invokeLater(() -> {
+            _widget.setHint(best);
+            setLabel("engine", status);
+        });
     }
 
     /** Display text in resource named TEXTRESOURCE in a new window titled
@@ -216,6 +250,9 @@ class GUI extends TopLevel implements View, Reporter {
     /** The board widget. */
     private BoardWidget _widget;
 
+    /** The game most recently displayed, or null. */
+    private volatile Game _controller;
+
     /** Queue of pending commands resulting from menu clicks and moves on the
      *  board.  We use a blocking queue because the responses to clicks
      *  on the board and on menus happen in parallel to the methods that
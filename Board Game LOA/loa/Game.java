@@ -2,10 +2,16 @@
  * University of California.  All rights reserved. */
 package loa;
 
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Random;
-import java.util.Scanner;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import static loa.Piece.*;
@@ -36,10 +42,29 @@ class Game {
     Game(View view, PrintStream logFile, Reporter reporter,
          Player manualPlayerTemplate, Player autoPlayerTemplate,
          boolean strict) {
+        this(view, logFile, reporter, manualPlayerTemplate,
+             autoPlayerTemplate, strict,
+             new BufferedReader(new InputStreamReader(System.in))
+             .lines().iterator(),
+             System.out);
+        _hosted = false;
+    }
+
+    /** A Game as for the constructor above, but hosted within a larger
+     *  program: it reads commands from INPUT, one line per element,
+     *  rather than the standard input, writes prompts, boards, and errors
+     *  to OUTPUT, and ends play() on "quit" or at the end of INPUT rather
+     *  than exiting the program.  It never touches System.in or calls
+     *  System.exit, so any number may run at once in one program. */
+    Game(View view, PrintStream logFile, Reporter reporter,
+         Player manualPlayerTemplate, Player autoPlayerTemplate,
+         boolean strict, Iterator<String> input, PrintStream output) {
         _view = view;
         _playing = false;
         _logFile = logFile;
-        _input = new Scanner(System.in);
+        _input = input;
+        _out = output;
+        _hosted = true;
         _autoPlayerTemplate = autoPlayerTemplate;
         _manualPlayerTemplate = manualPlayerTemplate;
         _nonplayer = manualPlayerTemplate.create(EMP, this);
@@ -67,7 +92,24 @@ class Game {
 
     /** Quit the game. */
     private void quit() {
-        System.exit(0);
+        if (_hosted) {
+            _playing = false;
+            _quit = true;
+        } else {
+            System.exit(0);
+        }
+    }
+
+    /** Report an error as for Utils.error.  When I am hosted, the message
+     *  goes to my output and never exits the program. */
+    private void error(String format, Object... args) {
+        if (_hosted) {
+            _out.print("Error: ");
+            _out.printf(format, args);
+            _out.flush();
+        } else {
+            Utils.error(format, args);
+        }
     }
 
     /** Return a move or command from the standard input, after prompting if
@@ -76,8 +118,8 @@ class Game {
         if (prompt) {
             prompt();
         }
-        if (_input.hasNextLine()) {
-            return _input.nextLine().trim();
+        if (_input.hasNext()) {
+            return _input.next().trim();
         } else {
             return null;
         }
@@ -97,14 +139,26 @@ class Game {
     /** Print a prompt for a move. */
     private void prompt() {
         if (_playing) {
-            System.out.print(_board.turn().abbrev().charAt(0));
+            _out.print(_board.turn().abbrev().charAt(0));
         } else {
-            System.out.print("-");
+            _out.print("-");
         }
-        System.out.print("> ");
-        System.out.flush();
+        _out.print("> ");
+        _out.flush();
     }
 
+    /** Positions searched by the bench command, as the moves leading to
+     *  them from the initial position. */
+    private static final String[][] BENCH_POSITIONS = {
+        {},
+        { "b1-b3", "a2-c2", "e1-e3", "h5-f5", "d8-d6", "a4-c4" },
+        { "c1-c3", "h2-f2", "e8-e6", "a5-c5", "b8-b6", "h7-f7",
+          "d1-d3", "a4-c4" },
+    };
+
+    /** Default depth searched by the bench command. */
+    private static final int BENCH_DEPTH = 4;
+
     /** Describes a command with up to three arguments. */
     private static final Pattern COMMAND_PATN =
         Pattern.compile("(#|\\S+)\\s*(\\S*)\\s*(\\S*)\\s*(\\S*).*");
@@ -144,13 +198,14 @@ class Game {
                 _playing = true;
                 break;
             case "dump":
-                System.out.printf("%s%n", _board);
+                _out.printf("%s%n", _board);
                 break;
             case "manual":
                 manualCommand(command.group(2).toLowerCase());
                 break;
             case "auto":
-                autoCommand(command.group(2).toLowerCase());
+                autoCommand(command.group(2).toLowerCase(),
+                            line.toLowerCase().split("\\s+"));
                 break;
             case "quit":
                 quit();
@@ -168,6 +223,18 @@ class Game {
             case "limit":
                 limitCommand(command.group(2));
                 break;
+            case "draw-by-repetition":
+                repetitionCommand(command.group(2));
+                break;
+            case "analyze":
+                analyzeCommand(command.group(2), command.group(3));
+                break;
+            case "stats":
+                statsCommand();
+                break;
+            case "bench":
+                benchCommand(command.group(2));
+                break;
             case "?": case "help":
                 help();
                 break;
@@ -200,6 +267,40 @@ class Game {
         _reporter.reportNote(format, args);
     }
 
+    /** Report that an automated player's search to DEPTH plies has so far
+     *  found BEST, with VALUE, by passing it on to my view. */
+    void reportSearchProgress(Move best, int depth, int value) {
+        _view.searchProgress(best, depth, value);
+    }
+
+    /** Ask the player whose move I am waiting for, if any, to stop work
+     *  on it (so that an automated player moves at once).  A request made
+     *  before that player starts searching still stops its search.  May
+     *  be called from any thread. */
+    synchronized void cancelSearch() {
+        if (_moving != null) {
+            _moving.cancel();
+        }
+    }
+
+    /** Return the next move or command from PLAYER, during which
+     *  cancelSearch applies to PLAYER.  Cancellations end with the call,
+     *  under the same lock as cancelSearch, so that none is left over to
+     *  stop PLAYER's next search. */
+    private String getMove(Player player) {
+        synchronized (this) {
+            _moving = player;
+        }
+        try {
+            return player.getMove();
+        } finally {
+            synchronized (this) {
+                _moving = null;
+                player.clearCancel();
+            }
+        }
+    }
+
     /** Report move by calling reportMove(MOVE) on my reporter. */
     void reportMove(Move move) {
         _reporter.reportMove(move);
@@ -219,14 +320,27 @@ class Game {
         }
     }
 
-    /** Set player PLAYER ("white" or "black") to be an automated player. */
-    private void autoCommand(String player) {
+    /** Set player PLAYER ("white" or "black") to be an automated player.
+     *  If WORDS, the words of the command, continue after PLAYER, the rest
+     *  are KEY=VALUE parameters choosing a registered engine (with
+     *  "engine=NAME") and configuring it (see Engines).  Otherwise, the
+     *  player is made from my usual automated-player template. */
+    private void autoCommand(String player, String[] words) {
+        Player template = _autoPlayerTemplate;
+        if (words.length > 2) {
+            Map<String, String> params =
+                Engines.parse(Arrays.copyOfRange(words, 2, words.length));
+            String name = params.getOrDefault("engine",
+                                              Engines.DEFAULT_ENGINE);
+            params.remove("engine");
+            template = Engines.template(name, _autoPlayerTemplate, params);
+        }
         switch (player) {
         case "white":
-            _white = _autoPlayerTemplate.create(WP, this);
+            _white = template.create(WP, this);
             break;
         case "black":
-            _black = _autoPlayerTemplate.create(BP, this);
+            _black = template.create(BP, this);
             break;
         default:
             error("unknown player: %s%n", player);
@@ -270,6 +384,158 @@ class Game {
         }
     }
 
+    /** Declare a tie when a position occurs for the Nth time, where N is
+     *  the numeral in LIMIT, or never if N is 0. */
+    private void repetitionCommand(String limit) {
+        try {
+            _board.setRepetitionLimit(Integer.parseInt(limit));
+        } catch (NumberFormatException excp) {
+            throw new IllegalArgumentException("badly formed numeral");
+        }
+    }
+
+    /** Search each of BENCH_POSITIONS with each registered engine, using
+     *  its default parameters and a table of its own, to the depth in the
+     *  numeral DEPTH (BENCH_DEPTH if empty).  Print the time taken to
+     *  reach each depth and each engine's overall search speed. */
+    private void benchCommand(String depth) {
+        int maxDepth;
+        try {
+            maxDepth = depth.isEmpty() ? BENCH_DEPTH
+                : Integer.parseInt(depth);
+        } catch (NumberFormatException excp) {
+            throw new IllegalArgumentException("badly formed numeral");
+        }
+        if (maxDepth <= 0) {
+            throw new IllegalArgumentException("bad bench depth");
+        }
+        for (String name : Engines.names()) {
+            Player engine = Engines.template(name, null, new HashMap<>())
+                .create(WP, this);
+            if (!(engine instanceof MachinePlayer)) {
+                _out.printf("%s: does not search%n", name);
+                continue;
+            }
+            MachinePlayer.EVAL_CACHE.clear();
+            long nodes = 0, nanos = 0;
+            for (int p = 0; p < BENCH_POSITIONS.length; p += 1) {
+                Board position = new Board();
+                for (String move : BENCH_POSITIONS[p]) {
+                    position.makeMove(mv(move));
+                }
+                MachinePlayer.Variation last = null;
+                for (MachinePlayer.Variation line
+                         : ((MachinePlayer) engine).timeToDepth(position,
+                                                                maxDepth)) {
+                    _out.printf("%s: position %d depth %d %.3f s "
+                                + "nodes %d (%d n/s)%n", name, p + 1,
+                                line.depth(), line.nanos() / 1e9,
+                                line.nodes(), line.nodesPerSecond());
+                    last = line;
+                }
+                nodes += last.nodes();
+                nanos += last.nanos();
+            }
+            _out.printf("%s: total %.3f s nodes %d (%d n/s)%n", name,
+                        nanos / 1e9, nodes,
+                        nanos == 0 ? 0 : (long) (nodes * 1e9 / nanos));
+        }
+        _out.flush();
+    }
+
+    /** Print the best K moves in the current position with their
+     *  principal variations, searching each to the depth in LIMIT, or
+     *  for the time in LIMIT if it has the form <N>ms. */
+    private void analyzeCommand(String k, String limit) {
+        int lines, depth;
+        long millis;
+        try {
+            lines = Integer.parseInt(k);
+            if (limit.endsWith("ms")) {
+                millis = Long.parseLong(limit.substring(0,
+                                                        limit.length() - 2));
+                depth = 0;
+            } else {
+                depth = Integer.parseInt(limit);
+                millis = 0;
+            }
+        } catch (NumberFormatException excp) {
+            throw new IllegalArgumentException("badly formed numeral");
+        }
+        if (lines <= 0 || depth < 0 || millis < 0
+            || (depth == 0 && millis == 0)) {
+            throw new IllegalArgumentException("bad analysis limits");
+        }
+        if (_board.gameOver()) {
+            error("game is over%n");
+            return;
+        }
+        Player engine = _autoPlayerTemplate.create(_board.turn(), this);
+        if (!(engine instanceof MachinePlayer)) {
+            error("no engine available for analysis%n");
+            return;
+        }
+        int rank = 1;
+        for (MachinePlayer.Variation line
+                 : ((MachinePlayer) engine).analyze(_board, lines, depth,
+                                                  millis)) {
+            _out.printf("%d. score %d depth %d nodes %d (%d n/s):",
+                        rank, line.value(), line.depth(), line.nodes(),
+                        line.nodesPerSecond());
+            for (Move move : line.moves()) {
+                _out.printf(" %s", move);
+            }
+            _out.println();
+            rank += 1;
+        }
+        _out.flush();
+    }
+
+    /** Print the number of games in my database that reached the current
+     *  position, and the moves played from it with their win rates for
+     *  the side to move. */
+    private void statsCommand() {
+        if (_database == null) {
+            error("no game database%n");
+            return;
+        }
+        _out.printf("%d games reach this position.%n",
+                    _database.gamesReaching(_board).size());
+        for (GameDatabase.MoveStats stats : _database.moveStats(_board)) {
+            _out.printf("%s: %d games, %.1f%% won%n", stats.move(),
+                        stats.games(), 100.0 * stats.winRate());
+        }
+        _out.flush();
+    }
+
+    /** Append a record of each finished game to RECORDS (see GameRecord). */
+    void setRecordFile(DataOutputStream records) {
+        _records = records;
+    }
+
+    /** Use DATABASE for the stats command. */
+    void setDatabase(GameDatabase database) {
+        _database = database;
+    }
+
+    /** Append a record of the current game to my record file, if any. */
+    private void recordGame() {
+        if (_records == null) {
+            return;
+        }
+        GameRecord record = GameRecord.of(_board);
+        if (record == null) {
+            error("could not record game: position was edited%n");
+            return;
+        }
+        try {
+            record.write(_records);
+            _records.flush();
+        } catch (IOException excp) {
+            error("could not record game: %s%n", excp.getMessage());
+        }
+    }
+
     /** Perform the move designated by LINE, if a valid move.  Return
      *  true iff LINE has the syntax of a move. */
     private boolean processMove(String line) {
@@ -290,22 +556,24 @@ class Game {
     public void play() {
         _board = new Board();
         _playing = true;
+        _quit = false;
 
-        while (true) {
+        while (!_quit) {
             try {
                 String next;
                 _view.update(this);
                 if (_board.gameOver() && _playing) {
                     announceWinner();
+                    recordGame();
                     _playing = false;
                 }
                 if (_playing) {
                     switch (_board.turn()) {
                     case WP:
-                        next = _white.getMove();
+                        next = getMove(_white);
                         break;
                     case BP:
-                        next = _black.getMove();
+                        next = getMove(_black);
                         break;
                     default:
                         throw new Error("Unreachable statement");
@@ -319,7 +587,8 @@ class Game {
                     processCommand(next);
                 }
             } catch (IllegalArgumentException excp) {
-                System.err.printf("Error: %s%n", excp.getMessage());
+                (_hosted ? _out : System.err)
+                    .printf("Error: %s%n", excp.getMessage());
             }
         }
     }
@@ -348,7 +617,7 @@ class Game {
 
     /** Print a help message. */
     void help() {
-        Main.printResource(HELP_FILE);
+        Main.printResource(HELP_FILE, _hosted ? _out : System.err);
     }
 
     /** The official game board. */
@@ -364,6 +633,9 @@ class Game {
     private Player _white;
     /** Player of black pieces. */
     private Player _black;
+    /** The player whose move I am waiting for, or null.  Guarded by
+     *  this. */
+    private Player _moving;
     /** A player to handle commands when game not started. Does not
      *  actually generate moves. */
     private Player _nonplayer;
@@ -382,8 +654,24 @@ class Game {
     /** Log file, or null if absent. */
     private PrintStream _logFile;
 
-    /** Input source. */
-    private Scanner _input;
+    /** Input source, one line per element. */
+    private Iterator<String> _input;
+
+    /** Destination for prompts, board dumps, and (when hosted) errors. */
+    private PrintStream _out;
+
+    /** True iff I am hosted within a larger program (see the constructor),
+     *  so that "quit" ends only this game. */
+    private boolean _hosted;
+
+    /** True iff a hosted game has received "quit". */
+    private boolean _quit;
+
+    /** Destination of records of finished games, or null. */
+    private DataOutputStream _records;
+
+    /** Database of past games, or null. */
+    private GameDatabase _database;
 
     /** Reporter for messages and errors. */
     private Reporter _reporter;
@@ -0,0 +1,447 @@
+package loa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/** A read-only database of games (see GameRecord), indexed by position.
+ *  The index, built from a file of game records by index(), is a file
+ *  containing
+ *        int     MAGIC, or CANONICAL_MAGIC for a canonical index
+ *        int     number of games, G
+ *        long    number of positions, P
+ *        long[G] offset of each game in the file of records
+ *        ENTRY[P]
+ *  where each ENTRY (ENTRY_BYTES long) is
+ *        long    Board.hash() of a position (Board.canonicalHash() in
+ *                a canonical index)
+ *        int     number of a game (from 0) that reached that position
+ *        short   ply at which it did so
+ *        short   the move then played (Move.code(), or NO_MOVE if the game
+ *                ended there) in bits 0-11, and the game's result code in
+ *                bits 12-13,
+ *  sorted by hash.  The index is memory-mapped, so a query costs one
+ *  binary search plus a scan of the matching entries, regardless of the
+ *  number of games.
+ *  @author Qianfei(Ben) Hu
+ */
+class GameDatabase implements AutoCloseable {
+
+    /** Identifies an index file. */
+    static final int MAGIC = 0x4c4f4149;
+    /** Identifies a canonical index file.  In such an index, each entry
+     *  describes the canonical form of its position (see
+     *  Board.canonicalSymmetry): its move is mapped, and its result has
+     *  its colors exchanged if need be, by the same symmetry.  Each
+     *  position thus shares its entries with all its images. */
+    static final int CANONICAL_MAGIC = 0x4c4f4143;
+    /** Size of the index header in bytes. */
+    static final int HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES;
+    /** Size of one position entry in bytes. */
+    static final int ENTRY_BYTES = 16;
+    /** Move field of an entry for the final position of a game. */
+    static final int NO_MOVE = 0xfff;
+    /** Number of entries sorted in memory at once while indexing. */
+    static final int RUN_ENTRIES = 1 << 22;
+
+    /** Per-move statistics for a position. */
+    static class MoveStats {
+        /** Statistics for MOVE. */
+        MoveStats(Move move) {
+            _move = move;
+        }
+
+        /** Return the move. */
+        Move move() {
+            return _move;
+        }
+
+        /** Return the number of games in which the move was played. */
+        int games() {
+            return _games;
+        }
+
+        /** Return the score of the side playing the move (1 per win,
+         *  1/2 per tie) divided by the number of finished games, or 0 if
+         *  none have finished. */
+        double winRate() {
+            return _finished == 0 ? 0.0 : _points / 2.0 / _finished;
+        }
+
+        /** The move. */
+        private final Move _move;
+        /** Number of games, finished games, and half-points won. */
+        private int _games, _finished, _points;
+    }
+
+    /** A database using the index in INDEX. */
+    GameDatabase(File index) throws IOException {
+        _file = new RandomAccessFile(index, "r");
+        FileChannel channel = _file.getChannel();
+        MappedByteBuffer header =
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        int magic = header.getInt();
+        if (magic != MAGIC && magic != CANONICAL_MAGIC) {
+            throw new IOException("not a game index: " + index);
+        }
+        _canonical = magic == CANONICAL_MAGIC;
+        _games = header.getInt();
+        _entries = header.getLong();
+        _offsets = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES,
+                               (long) _games * Long.BYTES);
+        long start = HEADER_BYTES + (long) _games * Long.BYTES;
+        int segments = (int) ((_entries + SEGMENT_ENTRIES - 1)
+                              / SEGMENT_ENTRIES);
+        _segments = new MappedByteBuffer[segments];
+        for (int i = 0; i < segments; i += 1) {
+            long first = (long) i * SEGMENT_ENTRIES;
+            long count = Math.min(SEGMENT_ENTRIES, _entries - first);
+            _segments[i] =
+                channel.map(FileChannel.MapMode.READ_ONLY,
+                            start + first * ENTRY_BYTES, count * ENTRY_BYTES);
+        }
+    }
+
+    /** Return the number of games. */
+    int games() {
+        return _games;
+    }
+
+    /** Return the offset of game number GAME in the file of records. */
+    long offset(int game) {
+        return _offsets.getLong(game * Long.BYTES);
+    }
+
+    /** Return the numbers of the games that reached BOARD's position, in
+     *  increasing order. */
+    List<Integer> gamesReaching(Board board) {
+        List<Integer> result = new ArrayList<>();
+        long key = board.hash(symmetry(board));
+        for (long i = lowerBound(key); i < _entries && hash(i) == key;
+             i += 1) {
+            result.add(game(i));
+        }
+        result.sort(null);
+        for (int i = result.size() - 1; i > 0; i -= 1) {
+            if (result.get(i).equals(result.get(i - 1))) {
+                result.remove(i);
+            }
+        }
+        return result;
+    }
+
+    /** Return statistics for each move played from BOARD's position in
+     *  any game, in the order of Move.code(). */
+    List<MoveStats> moveStats(Board board) {
+        TreeMap<Integer, MoveStats> stats = new TreeMap<>();
+        int sym = symmetry(board), inverse = Symmetry.inverse(sym);
+        long key = board.hash(sym);
+        int win = GameRecord.resultCode(Symmetry.apply(sym, board.turn()));
+        for (long i = lowerBound(key); i < _entries && hash(i) == key;
+             i += 1) {
+            int info = info(i);
+            int code = info & NO_MOVE, result = info >>> MOVE_BITS;
+            if (code == NO_MOVE) {
+                continue;
+            }
+            MoveStats entry =
+                stats.computeIfAbsent(code, c -> new MoveStats(
+                    Symmetry.apply(inverse, Move.fromCode(c))));
+            entry._games += 1;
+            if (result != GameRecord.UNFINISHED) {
+                entry._finished += 1;
+                entry._points +=
+                    result == win ? 2 : result == GameRecord.TIE ? 1 : 0;
+            }
+        }
+        return new ArrayList<>(stats.values());
+    }
+
+    /** Return true iff my index is canonical. */
+    boolean canonical() {
+        return _canonical;
+    }
+
+    /** Return the symmetry that maps BOARD to the form in which its
+     *  position is keyed in my index. */
+    private int symmetry(Board board) {
+        return _canonical ? board.canonicalSymmetry() : Symmetry.IDENTITY;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _file.close();
+    }
+
+    /** Return the index of the first entry whose hash is >= KEY. */
+    private long lowerBound(long key) {
+        long lo = 0, hi = _entries;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (hash(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the hash field of entry I. */
+    private long hash(long i) {
+        return segment(i).getLong(position(i));
+    }
+
+    /** Return the game field of entry I. */
+    private int game(long i) {
+        return segment(i).getInt(position(i) + Long.BYTES);
+    }
+
+    /** Return the move and result field of entry I. */
+    private int info(long i) {
+        return segment(i).getShort(position(i) + Long.BYTES
+                                   + Integer.BYTES + Short.BYTES) & 0xffff;
+    }
+
+    /** Return the segment holding entry I. */
+    private MappedByteBuffer segment(long i) {
+        return _segments[(int) (i / SEGMENT_ENTRIES)];
+    }
+
+    /** Return the position of entry I within its segment. */
+    private static int position(long i) {
+        return (int) (i % SEGMENT_ENTRIES) * ENTRY_BYTES;
+    }
+
+    /** Build an index in INDEX of the games in the file of records
+     *  GAMES.  Entries are sorted RUN_ENTRIES at a time into temporary
+     *  files, which are then merged, so the memory needed does not depend
+     *  on the number of games.  Returns the number of games indexed. */
+    static int index(File games, File index) throws IOException {
+        return index(games, index, false);
+    }
+
+    /** Build an index in INDEX of the games in GAMES, as for the other
+     *  index method, which is canonical iff CANONICAL. */
+    static int index(File games, File index, boolean canonical)
+        throws IOException {
+        List<File> runs = new ArrayList<>();
+        long[] keys = new long[RUN_ENTRIES], vals = new long[RUN_ENTRIES];
+        int n = 0, game = 0;
+        File offsetFile = File.createTempFile("loa-offsets", null);
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(games)));
+             DataOutputStream offsetOut = new DataOutputStream(
+                 new BufferedOutputStream(
+                     new FileOutputStream(offsetFile)))) {
+            long offset = 0;
+            for (GameRecord record = GameRecord.read(in); record != null;
+                 record = GameRecord.read(in), game += 1) {
+                offsetOut.writeLong(offset);
+                offset += record.size();
+                Board board = record.initialBoard();
+                for (int ply = 0; ply <= record.plies(); ply += 1) {
+                    int code = ply < record.plies()
+                        ? record.move(ply).code() : NO_MOVE;
+                    if (n == RUN_ENTRIES) {
+                        runs.add(writeRun(keys, vals, n));
+                        n = 0;
+                    }
+                    int sym = canonical
+                        ? board.canonicalSymmetry() : Symmetry.IDENTITY;
+                    if (code != NO_MOVE) {
+                        code = Symmetry.apply(sym, record.move(ply)).code();
+                    }
+                    keys[n] = board.hash(sym);
+                    vals[n] = ((long) game << 32) | ((long) ply << 16)
+                        | (result(record.result(), sym) << MOVE_BITS)
+                        | code;
+                    n += 1;
+                    if (ply < record.plies()) {
+                        board.makeMove(record.move(ply));
+                    }
+                }
+            }
+            if (n > 0) {
+                runs.add(writeRun(keys, vals, n));
+            }
+        }
+        try {
+            merge(runs, offsetFile, game, index,
+                  canonical ? CANONICAL_MAGIC : MAGIC);
+        } finally {
+            offsetFile.delete();
+            for (File run : runs) {
+                run.delete();
+            }
+        }
+        return game;
+    }
+
+    /** Sort the first N entries of KEYS and VALS by key and write them to
+     *  a new temporary file, which is returned. */
+    private static File writeRun(long[] keys, long[] vals, int n)
+        throws IOException {
+        sort(keys, vals, 0, n - 1);
+        File run = File.createTempFile("loa-run", null);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(run)))) {
+            for (int i = 0; i < n; i += 1) {
+                out.writeLong(keys[i]);
+                out.writeLong(vals[i]);
+            }
+        }
+        return run;
+    }
+
+    /** Sort KEYS[LO .. HI] into increasing order, permuting VALS[LO .. HI]
+     *  in the same way. */
+    private static void sort(long[] keys, long[] vals, int lo, int hi) {
+        while (lo < hi) {
+            long pivot = keys[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i += 1;
+                }
+                while (keys[j] > pivot) {
+                    j -= 1;
+                }
+                if (i <= j) {
+                    long k = keys[i], v = vals[i];
+                    keys[i] = keys[j];
+                    vals[i] = vals[j];
+                    keys[j] = k;
+                    vals[j] = v;
+                    i += 1;
+                    j -= 1;
+                }
+            }
+            if (j - lo < hi - i) {
+                sort(keys, vals, lo, j);
+                lo = i;
+            } else {
+                sort(keys, vals, i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    /** A sorted run being merged. */
+    private static class Run implements Comparable<Run> {
+        /** A Run reading FILE. */
+        Run(File file) throws IOException {
+            _in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+            _remaining = file.length() / ENTRY_BYTES;
+        }
+
+        /** Read my next entry into _key and _val.  Return false (and close
+         *  me) if there is none. */
+        boolean advance() throws IOException {
+            if (_remaining == 0) {
+                _in.close();
+                return false;
+            }
+            _remaining -= 1;
+            _key = _in.readLong();
+            _val = _in.readLong();
+            return true;
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            return Long.compare(_key, other._key);
+        }
+
+        /** Input. */
+        private final DataInputStream _in;
+        /** Entries not yet read. */
+        private long _remaining;
+        /** Current entry. */
+        private long _key, _val;
+    }
+
+    /** Return the result code RESULT as it applies to the image of a
+     *  game under symmetry SYM. */
+    private static int result(int result, int sym) {
+        if (!Symmetry.swapsColors(sym)) {
+            return result;
+        } else if (result == GameRecord.BLACK_WON) {
+            return GameRecord.WHITE_WON;
+        } else if (result == GameRecord.WHITE_WON) {
+            return GameRecord.BLACK_WON;
+        } else {
+            return result;
+        }
+    }
+
+    /** Write an index of GAMES games to INDEX, identified by MAGIC,
+     *  taking game offsets from OFFSETFILE and entries from the sorted
+     *  RUNS. */
+    private static void merge(List<File> runs, File offsetFile, int games,
+                              File index, int magic) throws IOException {
+        long entries = 0;
+        for (File run : runs) {
+            entries += run.length() / ENTRY_BYTES;
+        }
+        PriorityQueue<Run> queue = new PriorityQueue<>();
+        for (File file : runs) {
+            Run run = new Run(file);
+            if (run.advance()) {
+                queue.add(run);
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(index)));
+             DataInputStream offsets = new DataInputStream(
+                 new BufferedInputStream(
+                     new FileInputStream(offsetFile)))) {
+            out.writeInt(magic);
+            out.writeInt(games);
+            out.writeLong(entries);
+            for (int i = 0; i < games; i += 1) {
+                out.writeLong(offsets.readLong());
+            }
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                out.writeLong(run._key);
+                out.writeLong(run._val);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+        }
+    }
+
+    /** Number of bits of the move in the move and result field. */
+    private static final int MOVE_BITS = 12;
+    /** Number of entries in each mapped segment of the index (keeping
+     *  each segment well under the 2GB limit of a MappedByteBuffer). */
+    private static final long SEGMENT_ENTRIES = 1L << 26;
+
+    /** True iff my index is canonical. */
+    private final boolean _canonical;
+    /** The open index file. */
+    private final RandomAccessFile _file;
+    /** Number of games. */
+    private final int _games;
+    /** Number of position entries. */
+    private final long _entries;
+    /** Mapped game offsets. */
+    private final MappedByteBuffer _offsets;
+    /** Mapped position entries, SEGMENT_ENTRIES per segment. */
+    private final MappedByteBuffer[] _segments;
+}
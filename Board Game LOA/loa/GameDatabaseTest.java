@@ -0,0 +1,121 @@
+package loa;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static loa.Move.mv;
+import static loa.Piece.*;
+
+public class GameDatabaseTest {
+
+    /** Return a board after playing MOVES from the initial position. */
+    private static Board play(String... moves) {
+        Board b = new Board();
+        for (String move : moves) {
+            assertTrue("legal " + move, b.isLegal(mv(move)));
+            b.makeMove(mv(move));
+        }
+        return b;
+    }
+
+    /** Return a record of MOVES from the initial position, ending with
+     *  result code RESULT. */
+    private static GameRecord record(int result, String... moves) {
+        Board b = play(moves);
+        int[] codes = new int[moves.length];
+        for (int i = 0; i < codes.length; i += 1) {
+            codes[i] = mv(moves[i]).code();
+        }
+        return new GameRecord(b.startBitboard(BP), b.startBitboard(WP),
+                              b.startTurn(), result, codes);
+    }
+
+    /** Return the statistics in STATS for MOVE, or null. */
+    private static GameDatabase.MoveStats find(
+        List<GameDatabase.MoveStats> stats, String move) {
+        for (GameDatabase.MoveStats entry : stats) {
+            if (entry.move() == mv(move)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        File games = File.createTempFile("loa-games", null);
+        File index = File.createTempFile("loa-index", null);
+        try {
+            GameRecord first =
+                record(GameRecord.BLACK_WON, "b1-b3", "a2-c2", "b3-b1");
+            GameRecord[] records = {
+                first,
+                record(GameRecord.WHITE_WON, "b1-b3", "a2-c2", "d1-d3"),
+                first,
+                record(GameRecord.UNFINISHED, "b1-b3", "a2-c2", "d1-d3",
+                       "c2-a2"),
+                GameRecord.of(play("d1-d3")),
+            };
+            try (DataOutputStream out =
+                     new DataOutputStream(new FileOutputStream(games))) {
+                for (GameRecord r : records) {
+                    r.write(out);
+                }
+            }
+            assertEquals("games indexed", records.length,
+                         GameDatabase.index(games, index));
+
+            try (GameDatabase db = new GameDatabase(index)) {
+                assertEquals("games", records.length, db.games());
+                assertEquals("offset of second game", first.size(),
+                             db.offset(1));
+                assertEquals("all start the same", List.of(0, 1, 2, 3, 4),
+                             db.gamesReaching(new Board()));
+                assertEquals("shared prefix", List.of(0, 1, 2, 3),
+                             db.gamesReaching(play("b1-b3", "a2-c2")));
+                assertEquals("recorded twice", List.of(0, 2),
+                             db.gamesReaching(play("b1-b3", "a2-c2",
+                                                   "b3-b1")));
+                assertEquals("longer game", List.of(3),
+                             db.gamesReaching(play("b1-b3", "a2-c2",
+                                                   "d1-d3", "c2-a2")));
+                assertEquals("position never reached", List.of(),
+                             db.gamesReaching(play("g1-g3")));
+
+                List<GameDatabase.MoveStats> stats =
+                    db.moveStats(play("b1-b3", "a2-c2"));
+                assertEquals("moves from shared position", 2, stats.size());
+                assertTrue("in order of code", stats.get(0).move().code()
+                           < stats.get(1).move().code());
+                GameDatabase.MoveStats back = find(stats, "b3-b1");
+                assertEquals("games of b3-b1", 2, back.games());
+                assertEquals("black won both", 1.0, back.winRate(), 1e-9);
+                GameDatabase.MoveStats d3 = find(stats, "d1-d3");
+                assertEquals("games of d1-d3", 2, d3.games());
+                assertEquals("white won the finished game", 0.0,
+                             d3.winRate(), 1e-9);
+
+                List<GameDatabase.MoveStats> start =
+                    db.moveStats(new Board());
+                assertEquals("first moves", 2, start.size());
+                assertEquals("games of b1-b3", 4,
+                             find(start, "b1-b3").games());
+                assertEquals("black won two of three finished", 2.0 / 3,
+                             find(start, "b1-b3").winRate(), 1e-9);
+                assertEquals("games of d1-d3", 1,
+                             find(start, "d1-d3").games());
+                assertTrue("final positions have no moves",
+                           db.moveStats(play("b1-b3", "a2-c2", "b3-b1"))
+                           .isEmpty());
+            }
+        } finally {
+            games.delete();
+            index.delete();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package loa;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.List;
+
+import static loa.Piece.*;
+import static loa.Square.*;
+
+/** A compact record of one game: its initial position and result,
+ *  followed by one int (Move.code()) per ply.  In binary form, a record
+ *  is
+ *        long   mask of black pieces in the initial position
+ *        long   mask of white pieces in the initial position
+ *        byte   side to move initially (0 black, 1 white)
+ *        byte   result (see resultCode)
+ *        int    number of plies, N
+ *        int[N] the moves, as Move.code() values
+ *  where bit S.index() of a mask is set iff square S holds that color.
+ *  A file of games is a sequence of such records.
+ *  @author Qianfei(Ben) Hu
+ */
+class GameRecord {
+
+    /** Result codes: game unfinished, black won, white won, tie. */
+    static final int UNFINISHED = 0, BLACK_WON = 1, WHITE_WON = 2, TIE = 3;
+
+    /** A record of the game played on BOARD so far, starting from its
+     *  start position (see Board.startBitboard), or null if BOARD's
+     *  position does not follow from that. */
+    static GameRecord of(Board board) {
+        List<Move> moves = board.movesSinceStart();
+        if (moves == null) {
+            return null;
+        }
+        int[] codes = new int[moves.size()];
+        for (int i = 0; i < codes.length; i += 1) {
+            codes[i] = moves.get(i).code();
+        }
+        return new GameRecord(board.startBitboard(BP),
+                              board.startBitboard(WP), board.startTurn(),
+                              resultCode(board.winner()), codes);
+    }
+
+    /** A record of a game starting with BLACK and WHITE pieces (as masks)
+     *  and TURN to move, with result RESULT and moves MOVES (as codes). */
+    GameRecord(long black, long white, Piece turn, int result, int[] moves) {
+        _black = black;
+        _white = white;
+        _turn = turn;
+        _result = result;
+        _moves = moves;
+    }
+
+    /** Return the result code for a game whose winner() is WINNER. */
+    static int resultCode(Piece winner) {
+        if (winner == null) {
+            return UNFINISHED;
+        }
+        switch (winner) {
+        case BP:
+            return BLACK_WON;
+        case WP:
+            return WHITE_WON;
+        default:
+            return TIE;
+        }
+    }
+
+    /** Return a new Board set up in my initial position. */
+    Board initialBoard() {
+        Piece[][] contents = new Piece[BOARD_SIZE][BOARD_SIZE];
+        for (Square sq : ALL_SQUARES) {
+            long bit = 1L << sq.index();
+            contents[sq.row()][sq.col()] =
+                (_black & bit) != 0 ? BP : (_white & bit) != 0 ? WP : EMP;
+        }
+        return new Board(contents, _turn);
+    }
+
+    /** Return my number of plies. */
+    int plies() {
+        return _moves.length;
+    }
+
+    /** Return my Kth move (numbering from 0). */
+    Move move(int k) {
+        return Move.fromCode(_moves[k]);
+    }
+
+    /** Return my result code. */
+    int result() {
+        return _result;
+    }
+
+    /** Write me to OUT in binary form. */
+    void write(DataOutput out) throws IOException {
+        out.writeLong(_black);
+        out.writeLong(_white);
+        out.writeByte(_turn == WP ? 1 : 0);
+        out.writeByte(_result);
+        out.writeInt(_moves.length);
+        for (int code : _moves) {
+            out.writeInt(code);
+        }
+    }
+
+    /** Return the next record read from IN, or null at end of input. */
+    static GameRecord read(DataInput in) throws IOException {
+        long black;
+        try {
+            black = in.readLong();
+        } catch (EOFException excp) {
+            return null;
+        }
+        long white = in.readLong();
+        Piece turn = in.readByte() == 1 ? WP : BP;
+        int result = in.readByte();
+        int[] moves = new int[in.readInt()];
+        for (int i = 0; i < moves.length; i += 1) {
+            moves[i] = in.readInt();
+        }
+        return new GameRecord(black, white, turn, result, moves);
+    }
+
+    /** Return the size in bytes of my binary form. */
+    long size() {
+        return 2 * Long.BYTES + 2 + Integer.BYTES
+            + (long) Integer.BYTES * _moves.length;
+    }
+
+    /** Masks of the black and white pieces in the initial position. */
+    private final long _black, _white;
+    /** Side to move in the initial position. */
+    private final Piece _turn;
+    /** Result code. */
+    private final int _result;
+    /** Moves, as Move.code() values. */
+    private final int[] _moves;
+}
@@ -0,0 +1,153 @@
+package loa;
+
+import static loa.Square.*;
+
+/** Precomputed geometry and move tables for the lines of the board.  The
+ *  board has 46 lines: 8 rows, 8 columns, 15 diagonals (running
+ *  south-west to north-east), and 15 anti-diagonals (running north-west
+ *  to south-east).  Each square lies on one line of each of these four
+ *  kinds (its AXES), at some position along that line.  The occupancy of
+ *  a line by one side is an 8-bit mask in which bit P is set iff the
+ *  square at position P holds a piece of that side.
+ *
+ *  A piece moves along a line exactly as many squares as there are pieces
+ *  on that line, so its destinations along a line depend only on its
+ *  position and the line's friendly and enemy masks.  The table DEST gives
+ *  them for every such combination, as sliding-piece attack tables do in
+ *  chess programs.
+ *  @author Qianfei(Ben) Hu
+ */
+class Lines {
+
+    /** Number of axes (kinds of line). */
+    static final int AXES = 4;
+
+    /** Number of lines on the board. */
+    static final int NUM_LINES = 2 * BOARD_SIZE + 2 * (2 * BOARD_SIZE - 1);
+
+    /** Value of a destination position meaning "no destination".  It is
+     *  at least the length of any line. */
+    static final int NONE = 0xf;
+
+    /** Return the line through SQ along AXIS (0 <= AXIS < AXES). */
+    static int line(Square sq, int axis) {
+        return LINE[sq.index()][axis];
+    }
+
+    /** Return the position of SQ along its line on AXIS. */
+    static int position(Square sq, int axis) {
+        return POSITION[sq.index()][axis];
+    }
+
+    /** Return the number of squares on LINE. */
+    static int length(int line) {
+        return SQUARES[line].length;
+    }
+
+    /** Return the square at position POS of LINE. */
+    static Square square(int line, int pos) {
+        return SQUARES[line][pos];
+    }
+
+    /** Return the axis of the line through both FROM and TO, assuming
+     *  FROM.isValidMove(TO). */
+    static int axis(Square from, Square to) {
+        if (from.row() == to.row()) {
+            return 0;
+        } else if (from.col() == to.col()) {
+            return 1;
+        } else if (from.row() - from.col() == to.row() - to.col()) {
+            return 2;
+        } else {
+            return 3;
+        }
+    }
+
+    /** Return the destinations of a piece at position POS of a line
+     *  whose friendly pieces (including the moving one) have mask FRIENDS
+     *  and whose enemy pieces have mask ENEMIES.  The result packs the
+     *  destination further along the line (or NONE) in bits 0-3 and the
+     *  one back along the line (or NONE) in bits 4-7.  A destination
+     *  beyond the end of a line shorter than BOARD_SIZE must be rejected
+     *  by the caller, by comparing it with length(). */
+    static int destinations(int friends, int enemies, int pos) {
+        return DEST[(friends << BOARD_SIZE | enemies) << 3 | pos] & 0xff;
+    }
+
+    /** Return the destination along a line of a piece at position POS
+     *  moving over the line occupied by FRIENDS and ENEMIES (as for
+     *  destinations) in the direction STEP (1 or -1), or NONE. */
+    private static int destination(int friends, int enemies, int pos,
+                                   int step) {
+        int dest = pos + step * Integer.bitCount(friends | enemies);
+        if (dest < 0 || dest >= BOARD_SIZE || (friends & 1 << dest) != 0) {
+            return NONE;
+        }
+        for (int p = pos + step; p != dest; p += step) {
+            if ((enemies & 1 << p) != 0) {
+                return NONE;
+            }
+        }
+        return dest;
+    }
+
+    /** LINE[s][a] and POSITION[s][a] are the line through the square with
+     *  index s along axis a, and the position of that square on it. */
+    private static final int[][]
+        LINE = new int[NUM_SQUARES][AXES],
+        POSITION = new int[NUM_SQUARES][AXES];
+
+    /** SQUARES[l][p] is the square at position p of line l. */
+    private static final Square[][] SQUARES = new Square[NUM_LINES][];
+
+    /** Destinations indexed by (friends << 8 | enemies) << 3 | pos. */
+    private static final byte[] DEST =
+        new byte[1 << (2 * BOARD_SIZE + 3)];
+
+    static {
+        int[] lengths = new int[NUM_LINES];
+        int diagonals = 2 * BOARD_SIZE, antidiagonals = diagonals
+            + 2 * BOARD_SIZE - 1;
+        for (Square sq : ALL_SQUARES) {
+            int c = sq.col(), r = sq.row();
+            int[] line = LINE[sq.index()], pos = POSITION[sq.index()];
+            line[0] = r;
+            pos[0] = c;
+            line[1] = BOARD_SIZE + c;
+            pos[1] = r;
+            line[2] = diagonals + r - c + BOARD_SIZE - 1;
+            pos[2] = Math.min(r, c);
+            line[3] = antidiagonals + r + c;
+            pos[3] = c - Math.max(0, r + c - (BOARD_SIZE - 1));
+            for (int a = 0; a < AXES; a += 1) {
+                lengths[line[a]] += 1;
+            }
+        }
+        for (int l = 0; l < NUM_LINES; l += 1) {
+            SQUARES[l] = new Square[lengths[l]];
+        }
+        for (Square sq : ALL_SQUARES) {
+            for (int a = 0; a < AXES; a += 1) {
+                SQUARES[line(sq, a)][position(sq, a)] = sq;
+            }
+        }
+
+        int full = (1 << BOARD_SIZE) - 1;
+        for (int friends = 0; friends <= full; friends += 1) {
+            for (int enemies = 0; enemies <= full; enemies += 1) {
+                if ((friends & enemies) != 0) {
+                    continue;
+                }
+                for (int pos = 0; pos < BOARD_SIZE; pos += 1) {
+                    if ((friends & 1 << pos) == 0) {
+                        continue;
+                    }
+                    int forward = destination(friends, enemies, pos, 1),
+                        back = destination(friends, enemies, pos, -1);
+                    DEST[(friends << BOARD_SIZE | enemies) << 3 | pos] =
+                        (byte) (back << 4 | forward);
+                }
+            }
+        }
+    }
+}
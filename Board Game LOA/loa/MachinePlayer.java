@@ -3,6 +3,13 @@
 package loa;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static loa.Piece.*;
 
@@ -17,15 +24,72 @@ class MachinePlayer extends Player {
     /** A magnitude greater than a normal value. */
     private static final int INFTY = Integer.MAX_VALUE;
 
+    /** Default size of a transposition table, in megabytes. */
+    static final int DEFAULT_TABLE_SIZE = 16;
+
+    /** Log base 2 of the number of slots in EVAL_CACHE. */
+    static final int EVAL_CACHE_BITS = 16;
+
+    /** Recent values of eval(board, WP), shared by all players. */
+    static final EvalCache EVAL_CACHE = new EvalCache(EVAL_CACHE_BITS);
+
     /** A new MachinePlayer with no piece or controller (intended to produce
      *  a template). */
     MachinePlayer() {
-        this(null, null);
+        this(new TranspositionTable(DEFAULT_TABLE_SIZE), null);
+    }
+
+    /** A new MachinePlayer template whose products share TABLE and, if
+     *  WORKERS is not null, run their searches on WORKERS.  Sharing a
+     *  bounded WORKERS pool among many games bounds the number of
+     *  searches that run at once. */
+    MachinePlayer(TranspositionTable table, ExecutorService workers) {
+        this(null, null, table, workers);
     }
 
     /** A MachinePlayer that plays the SIDE pieces in GAME. */
     MachinePlayer(Piece side, Game game) {
+        this(side, game, new TranspositionTable(DEFAULT_TABLE_SIZE), null);
+    }
+
+    /** A MachinePlayer that plays the SIDE pieces in GAME, using TABLE
+     *  and WORKERS as for the template constructor. */
+    MachinePlayer(Piece side, Game game, TranspositionTable table,
+                  ExecutorService workers) {
+        this(side, game, table, workers, DEPTH, 1);
+    }
+
+    /** A MachinePlayer that plays the SIDE pieces in GAME, using TABLE
+     *  and WORKERS as for the template constructor, searching to DEPTH
+     *  plies with THREADS searches at once. */
+    private MachinePlayer(Piece side, Game game, TranspositionTable table,
+                          ExecutorService workers, int depth, int threads) {
         super(side, game);
+        _table = table;
+        _workers = workers;
+        _maxDepth = depth;
+        _threads = threads;
+    }
+
+    /** Return a template like me, but configured by PARAMS (see Engines),
+     *  which may set "depth", the number of plies searched; "threads",
+     *  the most searches run at once for each move (see startHelpers);
+     *  and "tt", the
+     *  size in megabytes of a new transposition table for the template,
+     *  which otherwise shares mine. */
+    MachinePlayer configure(Map<String, String> params) {
+        Engines.checkParams(params, "depth", "threads", "tt");
+        TranspositionTable table = _table;
+        if (params.containsKey("tt")) {
+            table = new TranspositionTable(Engines.intParam(params, "tt",
+                                                            0, 1),
+                                           _table.canonical());
+        }
+        return new MachinePlayer(null, null, table, _workers,
+                                 Engines.intParam(params, "depth",
+                                                  _maxDepth, 1),
+                                 Engines.intParam(params, "threads",
+                                                  _threads, 1));
     }
 
     @Override
@@ -33,15 +97,20 @@ class MachinePlayer extends Player {
         Move choice;
 
         assert side() == getGame().getBoard().turn();
-        _depth = DEPTH;
-        choice = searchForMove();
+        _depth = _maxDepth;
+        if (_workers == null) {
+            choice = searchForMove();
+        } else {
+            choice = searchOnWorkers();
+        }
         getGame().reportMove(choice);
         return choice.toString();
     }
 
     @Override
     Player create(Piece piece, Game game) {
-        return new MachinePlayer(piece, game);
+        return new MachinePlayer(piece, game, _table, _workers, _maxDepth,
+                                 _threads);
     }
 
     @Override
@@ -49,23 +118,242 @@ class MachinePlayer extends Player {
         return false;
     }
 
+    /** Stop any search in progress, or the next one to start if none is,
+     *  so that getMove promptly returns the best move found so far. */
+    @Override
+    void cancel() {
+        _aborted = true;
+    }
+
+    @Override
+    void clearCancel() {
+        _aborted = false;
+    }
+
+    /** Return the result of searchForMove, performed on one of _workers,
+     *  waiting for a worker to become free as necessary. */
+    private Move searchOnWorkers() {
+        try {
+            return _workers.submit(this::searchForMove).get();
+        } catch (InterruptedException excp) {
+            throw new Error("unexpected interrupt");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new Error(excp.getCause());
+        }
+    }
+
     /** Return a move after searching the game tree to DEPTH>0 moves
-     *  from the current position. Assumes the game is not over. */
+     *  from the current position, by iterative deepening, so that
+     *  progress is reported at each depth in turn and each iteration
+     *  starts from the best move of the one before.  Assumes the game is
+     *  not over.  A cancel() (see Game.cancelSearch) stops the search
+     *  even if it came before the search began. */
     private Move searchForMove() {
         Board board = new Board(getBoard());
 
-        int value;
         assert side() == board.turn();
+        int sense = side() == WP ? 1 : -1;
         _foundMove = null;
+        _nodes = 0;
 
-        if (side() == WP) {
-            value = findMove(board, chooseDepth(), true, 1, -INFTY, INFTY);
-        } else {
-            value = findMove(board, chooseDepth(), true, -1, -INFTY, INFTY);
+        List<MachinePlayer> helpers = startHelpers(board, chooseDepth());
+        for (int d = 1; d <= chooseDepth() && !_aborted; d += 1) {
+            findMove(board, d, true, sense, -INFTY, INFTY);
+        }
+        stopHelpers(helpers);
+        if (_foundMove == null) {
+            _foundMove = board.legalMoves().get(0);
         }
         return _foundMove;
     }
 
+    /** Return the K best moves from POSITION, best first, each
+     *  with its principal variation.  Searches by iterative deepening to
+     *  DEPTH plies, or, if MILLIS > 0, for as many plies as complete
+     *  within MILLIS milliseconds.  All lines share my transposition
+     *  table, so each line after the first is mostly answered from the
+     *  table entries left by the lines before it.  Assumes the game is
+     *  not over on POSITION, which is not modified. */
+    List<Variation> analyze(Board position, int k, int depth, long millis) {
+        Board board = new Board(position);
+        int sense = board.turn() == WP ? 1 : -1;
+        List<Variation> result = new ArrayList<>();
+        long start = System.nanoTime();
+        _nodes = 0;
+        _deadline = millis > 0 ? start + millis * NANOS_PER_MILLI : 0;
+        int maxDepth = millis > 0 ? MAX_ANALYSIS_DEPTH : depth;
+        for (int d = 1; d <= maxDepth; d += 1) {
+            List<Variation> lines = new ArrayList<>();
+            List<Move> excluded = new ArrayList<>();
+            while (lines.size() < k) {
+                int value = searchRoot(board, d, sense, excluded);
+                if (_aborted || _foundMove == null) {
+                    break;
+                }
+                excluded.add(_foundMove);
+                lines.add(new Variation(principalVariation(board,
+                                                           _foundMove, d),
+                                        sense * value, d, _nodes,
+                                        System.nanoTime() - start));
+            }
+            if (_aborted) {
+                break;
+            }
+            result = lines;
+        }
+        _deadline = 0;
+        _aborted = false;
+        return result;
+    }
+
+    /** Return the best line from POSITION at each depth from 1 to DEPTH,
+     *  found by iterative deepening, with the nodes searched and the time
+     *  taken up to the end of each iteration.  Assumes the game is not
+     *  over on POSITION, which is not modified. */
+    List<Variation> timeToDepth(Board position, int depth) {
+        Board board = new Board(position);
+        int sense = board.turn() == WP ? 1 : -1;
+        List<Variation> result = new ArrayList<>();
+        long start = System.nanoTime();
+        _nodes = 0;
+        for (int d = 1; d <= depth; d += 1) {
+            List<MachinePlayer> helpers = startHelpers(board, d);
+            int value = searchRoot(board, d, sense, new ArrayList<>());
+            stopHelpers(helpers);
+            result.add(new Variation(principalVariation(board, _foundMove,
+                                                        d),
+                                     sense * value, d, _nodes,
+                                     System.nanoTime() - start));
+        }
+        return result;
+    }
+
+    /** Start _threads - 1 helper searches of BOARD to DEPTH or DEPTH + 1
+     *  plies (alternately, so that helpers do not just repeat each
+     *  other's work), and return the helpers.  They share my table, so
+     *  what they find cuts off my own search of BOARD to DEPTH.  Helpers
+     *  run on HELPERS, which all players share and which has one thread
+     *  per processor, so however many games are searching, helpers add
+     *  at most that many threads.  A helper that finds no free thread
+     *  before my own search ends is simply never run. */
+    private List<MachinePlayer> startHelpers(Board board, int depth) {
+        List<MachinePlayer> helpers = new ArrayList<>();
+        int sense = board.turn() == WP ? 1 : -1;
+        for (int i = 1; i < _threads; i += 1) {
+            MachinePlayer helper =
+                new MachinePlayer(null, null, _table, null, depth + i % 2, 1);
+            Board position = new Board(board);
+            helper._search = HELPERS.submit(() -> {
+                if (!helper._claimed.compareAndSet(false, true)) {
+                    return 0;
+                }
+                return helper.findMove(position, helper._maxDepth, true,
+                                       sense, -INFTY, INFTY);
+            });
+            helpers.add(helper);
+        }
+        return helpers;
+    }
+
+    /** Stop HELPERS, started by startHelpers, and add the nodes they
+     *  searched to mine.  Helpers that have not yet started are claimed
+     *  here, so that they never run, rather than waited for. */
+    private void stopHelpers(List<MachinePlayer> helpers) {
+        for (MachinePlayer helper : helpers) {
+            helper.cancel();
+            if (helper._claimed.compareAndSet(false, true)) {
+                continue;
+            }
+            try {
+                helper._search.get();
+            } catch (InterruptedException excp) {
+                throw new Error("unexpected interrupt");
+            } catch (ExecutionException excp) {
+                throw new Error(excp.getCause());
+            }
+            _nodes += helper._nodes;
+        }
+    }
+
+    /** Search the moves from BOARD other than those in EXCLUDED to DEPTH
+     *  plies, with SENSE as for findMove.  Set _foundMove to the best such
+     *  move (null if there are none) and return its value. */
+    private int searchRoot(Board board, int depth, int sense,
+                           List<Move> excluded) {
+        _foundMove = null;
+        int alpha = -INFTY, beta = INFTY;
+        int bestValue = -sense * INFTY;
+        for (Move move : board.legalMoves()) {
+            if (excluded.contains(move)) {
+                continue;
+            }
+            board.makeMove(move);
+            int value = findMove(board, depth - 1, false, -sense,
+                                 alpha, beta);
+            board.retract();
+            if (_aborted) {
+                return 0;
+            }
+            if (_foundMove == null
+                || (sense == 1 ? value > bestValue : value < bestValue)) {
+                _foundMove = move;
+                bestValue = value;
+                if (sense == 1) {
+                    alpha = value;
+                } else {
+                    beta = value;
+                }
+            }
+        }
+        return bestValue;
+    }
+
+    /** Return the data word in my transposition table for BOARD's
+     *  position, or 0 if none. */
+    private long probe(Board board) {
+        if (!_table.canonical()) {
+            return _table.probe(board.hash());
+        }
+        int sym = board.canonicalSymmetry();
+        return TranspositionTable.transform(_table.probe(board.hash(sym)),
+                                            Symmetry.inverse(sym));
+    }
+
+    /** Record in my transposition table that BOARD's position has VALUE
+     *  of type BOUND with best move BEST when searched to DEPTH. */
+    private void store(Board board, int depth, int value, int bound,
+                       Move best) {
+        long data = TranspositionTable.pack(depth, value, bound, best);
+        if (!_table.canonical()) {
+            _table.store(board.hash(), data);
+        } else {
+            int sym = board.canonicalSymmetry();
+            _table.store(board.hash(sym),
+                         TranspositionTable.transform(data, sym));
+        }
+    }
+
+    /** Return the principal variation that starts with FIRST from BOARD,
+     *  following best moves recorded in my transposition table for at
+     *  most DEPTH plies. */
+    private List<Move> principalVariation(Board board, Move first,
+                                          int depth) {
+        List<Move> line = new ArrayList<>();
+        for (Move move = first; move != null && line.size() < depth
+                 && !board.gameOver() && board.isLegal(move); ) {
+            line.add(move);
+            board.makeMove(move);
+            move = TranspositionTable.move(probe(board));
+        }
+        for (int i = 0; i < line.size(); i += 1) {
+            board.retract();
+        }
+        return line;
+    }
+
     /** Find a move from position BOARD and return its value, recording
      *  the move found in _foundMove iff SAVEMOVE. The move
      *  should have maximal value or have value > BETA if SENSE==1 WP,
@@ -75,107 +363,125 @@ class MachinePlayer extends Player {
      *  on BOARD, does not set _foundMove. */
     private int findMove(Board board, int depth, boolean saveMove,
                          int sense, int alpha, int beta) {
-
-        Move move = null;
-        saveMove = board.gameOver();
-
-        if (!saveMove) {
-            if (sense == 1) {
-                move = findBestMove(board.turn(), board, depth, beta);
-            } else {
-                move = findBestMove(board.turn(), board, depth, alpha);
-            }
+        _nodes += 1;
+        if (_deadline != 0 && (_nodes & CLOCK_CHECK_MASK) == 0
+            && System.nanoTime() > _deadline) {
+            _aborted = true;
         }
-
-        if (!saveMove) {
-            _foundMove = move;
+        if (_aborted) {
+            return 0;
+        }
+        if (board.gameOver()) {
+            return terminalValue(board);
+        }
+        if (!saveMove && board.repetitions() > 0) {
+            return 0;
         }
-        return move != null ? move.getMoveScore() : 0;
-    }
-
-    /** Return a search depth for the current position. */
-    private int chooseDepth() {
-        return _depth;
-    }
-
-    /** Find the best move for piece p.
-     * @param p current piece
-     * @param board current board in the game
-     * @param depth depth of calculating the best move
-     * @param good the score that is good enough
-     * @return the best move.
-     * */
-    Move findBestMove(Piece p, Board board, int depth, int good) {
         if (depth == 0) {
-            return guessBestMove(p, board);
+            return cachedEval(board);
         }
-        Move m = board.legalMoves().get(0);
-        m.setMoveScore(-INFTY);
-        Move bestSoFar = m;
 
-        for (Move move : board.legalMoves()) {
-            board.makeMove(move);
-            Move response = findBestMove(board.turn(), board,
-                    depth - 1, -bestSoFar.getMoveScore());
-
-            if (-response.calculateValue(board) > bestSoFar.getMoveScore()) {
-                bestSoFar = move;
-                bestSoFar.setMoveScore(-response.getMoveScore());
-                board.retract();
-                if (bestSoFar.getMoveScore() >= good) {
+        long entry = probe(board);
+        Move hashMove = null;
+        if (entry != 0) {
+            hashMove = TranspositionTable.move(entry);
+            if (!saveMove && TranspositionTable.depth(entry) >= depth) {
+                int stored = TranspositionTable.value(entry);
+                switch (TranspositionTable.bound(entry)) {
+                case TranspositionTable.EXACT:
+                    return stored;
+                case TranspositionTable.LOWER:
+                    alpha = Math.max(alpha, stored);
+                    break;
+                default:
+                    beta = Math.min(beta, stored);
                     break;
                 }
-            } else {
-                board.retract();
+                if (alpha >= beta) {
+                    return stored;
+                }
             }
         }
-        return bestSoFar;
-    }
 
-    /** Guess one best move when depth = 0..
-     * @param p the current player
-     * @param board the current board
-     * @return the best move with depth = 0
-     */
-    Move guessBestMove(Piece p, Board board) {
+        List<Move> moves = board.legalMoves();
+        if (hashMove != null && moves.remove(hashMove)) {
+            moves.add(0, hashMove);
+        }
+
+        int alpha0 = alpha, beta0 = beta;
         Move best = null;
-        Integer bestValue = null;
-        assert (board.turn() == p);
-        if (p == WP) {
-            for (Move move : board.legalMoves()) {
-                board.makeMove(move);
-                if (board.winner() == p) {
-                    board.retract();
-                    return move;
-                }
-                int current = eval(board, WP);
-                bestValue = bestValue == null ? current : bestValue;
-                if (current >= bestValue) {
-                    best = move;
-                    bestValue = current;
+        int bestValue = -sense * INFTY;
+        for (Move move : moves) {
+            board.makeMove(move);
+            int value = findMove(board, depth - 1, false, -sense,
+                                 alpha, beta);
+            board.retract();
+            if (best == null
+                || (sense == 1 ? value > bestValue : value < bestValue)) {
+                best = move;
+                bestValue = value;
+                if (saveMove && !_aborted) {
+                    _foundMove = best;
+                    if (getGame() != null) {
+                        getGame().reportSearchProgress(best, depth,
+                                                       bestValue);
+                    }
                 }
-                board.retract();
             }
-        } else if (p == BP) {
-            for (Move move : board.legalMoves()) {
-                board.makeMove(move);
-                if (board.winner() == p) {
-                    board.retract();
-                    return move;
-                }
-                int current = eval(board, BP);
-                bestValue = bestValue == null ? current : bestValue;
-                if (current <= bestValue) {
-                    best = move;
-                    bestValue = current;
-                }
-                board.retract();
+            if (sense == 1) {
+                alpha = Math.max(alpha, value);
+            } else {
+                beta = Math.min(beta, value);
+            }
+            if (alpha >= beta) {
+                break;
             }
         }
         if (best == null) {
-            best = board.legalMoves().get(0);
+            return cachedEval(board);
+        }
+        if (_aborted) {
+            return bestValue;
+        }
+
+        int bound;
+        if (bestValue <= alpha0) {
+            bound = TranspositionTable.UPPER;
+        } else if (bestValue >= beta0) {
+            bound = TranspositionTable.LOWER;
+        } else {
+            bound = TranspositionTable.EXACT;
+        }
+        store(board, depth, bestValue, bound, best);
+        return bestValue;
+    }
+
+    /** Return the value of BOARD, on which the game is over. */
+    private static int terminalValue(Board board) {
+        switch (board.winner()) {
+        case WP:
+            return WINNING_VALUE;
+        case BP:
+            return -WINNING_VALUE;
+        default:
+            return 0;
         }
-        return best;
+    }
+
+    /** Return a search depth for the current position. */
+    private int chooseDepth() {
+        return _depth;
+    }
+
+    /** Return eval(BOARD, WP), taking it from EVAL_CACHE if possible. */
+    static int cachedEval(Board board) {
+        long key = board.hash();
+        int value = EVAL_CACHE.lookup(key);
+        if (value == EvalCache.MISSING) {
+            value = eval(board, WP);
+            EVAL_CACHE.put(key, value);
+        }
+        return value;
     }
 
     /** Returns an evaluation of a board.
@@ -223,6 +529,103 @@ class MachinePlayer extends Player {
         return (c1 - c0) * (c1 - c0) + (r1 - r0) * (r1 - r0);
     }
 
+    /** Search results shared with the other players made from my
+     *  template. */
+    private final TranspositionTable _table;
+    /** Threads on which to search, or null to search on the calling
+     *  thread. */
+    private final ExecutorService _workers;
+    /** Number of plies to search for each move. */
+    private final int _maxDepth;
+    /** Number of searches (mine and helpers') run at once. */
+    private final int _threads;
+    /** The search being run by this helper (see startHelpers). */
+    private Future<Integer> _search;
+    /** Set by whichever comes first: this helper starting its search, or
+     *  its player stopping it (see stopHelpers). */
+    private final AtomicBoolean _claimed = new AtomicBoolean();
+
+    /** Threads on which helpers search, shared by all players: one per
+     *  processor. */
+    private static final ExecutorService HELPERS =
+        Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), (task) -> {
+                Thread thread = new Thread(task, "helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /** One line found by analyze: a principal variation, its value from
+     *  the point of view of the side to move, the depth searched, and
+     *  the nodes searched and time taken to find it. */
+    static class Variation {
+        /** A Variation with MOVES, VALUE, DEPTH, NODES, and NANOS. */
+        Variation(List<Move> moves, int value, int depth, long nodes,
+                  long nanos) {
+            _moves = moves;
+            _value = value;
+            _depth = depth;
+            _nodes = nodes;
+            _nanos = nanos;
+        }
+
+        /** Return the moves of this line, starting with the move analyzed. */
+        List<Move> moves() {
+            return _moves;
+        }
+
+        /** Return my value for the side to move. */
+        int value() {
+            return _value;
+        }
+
+        /** Return the depth to which I was searched. */
+        int depth() {
+            return _depth;
+        }
+
+        /** Return the number of nodes searched up to finding me. */
+        long nodes() {
+            return _nodes;
+        }
+
+        /** Return the time taken to find me, in nanoseconds. */
+        long nanos() {
+            return _nanos;
+        }
+
+        /** Return the search speed up to finding me, in nodes/second. */
+        long nodesPerSecond() {
+            return _nanos == 0 ? 0 : _nodes * NANOS_PER_SEC / _nanos;
+        }
+
+        /** Principal variation. */
+        private final List<Move> _moves;
+        /** Value, depth, and statistics. */
+        private final int _value, _depth;
+        /** Search statistics. */
+        private final long _nodes, _nanos;
+    }
+
+    /** Nanoseconds per millisecond and per second. */
+    private static final long
+        NANOS_PER_MILLI = 1_000_000L, NANOS_PER_SEC = 1_000_000_000L;
+    /** Deepest iteration of a timed analysis. */
+    private static final int MAX_ANALYSIS_DEPTH = 64;
+    /** The clock is read once per CLOCK_CHECK_MASK + 1 nodes. */
+    private static final int CLOCK_CHECK_MASK = 0x3ff;
+
+    /** Number of nodes visited by the current search. */
+    private long _nodes;
+    /** Time (System.nanoTime()) at which to abandon the current search,
+     *  or 0 if it is not timed. */
+    private long _deadline;
+    /** True iff the current search has passed its deadline or been
+     *  cancelled.  Cleared only after a search ends (by analyze, or by
+     *  clearCancel), so that a cancel arriving before a search starts is
+     *  not lost. */
+    private volatile boolean _aborted;
+
     /** Used to convey moves discovered by findMove. */
     private Move _foundMove;
     /** The current search depth. */
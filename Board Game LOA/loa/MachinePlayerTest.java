@@ -1,6 +1,15 @@
 package loa;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
 import org.junit.Test;
+import static org.junit.Assert.*;
 import static loa.Piece.*;
 
 public class MachinePlayerTest {
@@ -26,4 +35,127 @@ public class MachinePlayerTest {
             b.retract();
         }
     }
+
+    @Test
+    public void testEvalCache() {
+        EvalCache cache = new EvalCache(4);
+        Board b = new Board(_BOARD1, BP);
+        assertEquals("empty cache", EvalCache.MISSING, cache.lookup(b.hash()));
+        cache.put(b.hash(), -17);
+        assertEquals("cached value", -17, cache.lookup(b.hash()));
+        assertEquals("hits", 1, cache.hits());
+        assertEquals("misses", 1, cache.misses());
+        assertEquals("cachedEval agrees with eval", MachinePlayer.eval(b, WP),
+                     MachinePlayer.cachedEval(b));
+        assertEquals("cachedEval from cache", MachinePlayer.eval(b, WP),
+                     MachinePlayer.cachedEval(b));
+    }
+
+    @Test
+    public void testEngines() {
+        Player template =
+            Engines.template("ab", null, Engines.parse("depth=2",
+                                                       "threads=2"));
+        assertTrue("ab is a MachinePlayer", template instanceof MachinePlayer);
+        Board b = new Board(_BOARD1, BP);
+        List<MachinePlayer.Variation> lines =
+            ((MachinePlayer) template).timeToDepth(b, 2);
+        assertEquals("one line per depth", 2, lines.size());
+        assertTrue("legal move", b.isLegal(lines.get(1).moves().get(0)));
+        assertTrue("random registered",
+                   Engines.template("random", template, Engines.parse())
+                   instanceof RandomPlayer);
+        for (String bad : new String[] { "depth=0", "tt=x", "foo=1" }) {
+            try {
+                Engines.template("ab", template, Engines.parse(bad));
+                fail("accepted " + bad);
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testAnalyzeMultiPV() {
+        final int depth = 3, k = 4;
+        Board b = new Board();
+        b.makeMove(Move.mv("b1-b3"));
+        MachinePlayer analyzer = (MachinePlayer)
+            Engines.template("ab", null, Engines.parse("depth=" + depth));
+        List<MachinePlayer.Variation> lines = analyzer.analyze(b, k, depth, 0);
+        assertEquals("k lines", k, lines.size());
+        HashSet<Move> firsts = new HashSet<>();
+        for (int i = 0; i < k; i += 1) {
+            MachinePlayer.Variation line = lines.get(i);
+            assertEquals("full depth", depth, line.depth());
+            assertTrue("legal first move", b.isLegal(line.moves().get(0)));
+            assertTrue("distinct first moves",
+                       firsts.add(line.moves().get(0)));
+            if (i > 0) {
+                assertTrue("best first",
+                           lines.get(i - 1).value() >= line.value());
+            }
+        }
+
+        List<Move> played = new ArrayList<>();
+        Reporter reporter = new Reporter() {
+            @Override
+            public void reportError(String format, Object... args) {
+                fail(String.format(format, args));
+            }
+
+            @Override
+            public void reportNote(String format, Object... args) {
+            }
+
+            @Override
+            public void reportMove(Move move) {
+                played.add(move);
+            }
+        };
+        Player engine =
+            Engines.template("ab", null, Engines.parse("depth=" + depth));
+        Game game = new Game(new NullView(), null, reporter,
+                             new HumanPlayer(), engine, false,
+                             List.of("b1-b3").iterator(),
+                             new PrintStream(OutputStream.nullOutputStream()));
+        game.play();
+        assertEquals("white moved once", 1, played.size());
+        Move chosen = played.get(0);
+        if (lines.get(0).value() > lines.get(1).value()) {
+            assertEquals("best line is getMove's move", chosen,
+                         lines.get(0).moves().get(0));
+        } else {
+            boolean found = false;
+            for (MachinePlayer.Variation line : lines) {
+                if (line.moves().get(0) == chosen) {
+                    assertEquals("getMove's move is as good as the best",
+                                 lines.get(0).value(), line.value());
+                    found = true;
+                }
+            }
+            assertTrue("getMove's move is among the best lines", found);
+        }
+    }
+
+    @Test
+    public void testTableFile() throws IOException {
+        File file = File.createTempFile("loa-table", null);
+        file.delete();
+        try {
+            Board b = new Board(_BOARD1, BP);
+            Move best = b.legalMoves().get(0);
+            TranspositionTable t1 = TranspositionTable.open(file, 1, false);
+            t1.store(b.hash(), 3, 42, TranspositionTable.EXACT, best);
+            TranspositionTable t2 = TranspositionTable.open(file, 8, false);
+            assertEquals("size of existing file kept", t1.size(), t2.size());
+            long entry = t2.probe(b.hash());
+            assertEquals("value persists", 42,
+                         TranspositionTable.value(entry));
+            assertSame("move persists", best, TranspositionTable.move(entry));
+            assertEquals("other positions miss", 0, t2.probe(~b.hash()));
+        } finally {
+            file.delete();
+        }
+    }
 }
@@ -2,9 +2,13 @@
  * University of California.  All rights reserved. */
 package loa;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
@@ -13,6 +17,8 @@ import java.io.PrintStream;
 import ucb.util.CommandArgs;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static loa.Piece.*;
 import static loa.Utils.*;
@@ -30,13 +36,22 @@ public class Main {
     /** Number of seconds in one minute. */
     static final double MIN = 60.0;
 
+    /** Default search depth for --analyze. */
+    static final int DEFAULT_ANALYSIS_DEPTH = 3;
+
     /** The main Lines of Action.  ARGS are as described in the
      *  file Usage.
      */
     public static void main(String... args) {
         CommandArgs options =
             new CommandArgs("--debug=(\\d+){0,1} --display{0,1} --strict{0,1} "
-                            + "--log={0,1} --=(.*){0,2}",
+                            + "--log={0,1} --server=(\\d+){0,1} "
+                            + "--engines=(\\d+){0,1} --analyze=(.+){0,1} "
+                            + "--depth=(\\d+){0,1} --time=(\\d+){0,1} "
+                            + "--record=(.+){0,1} --index=(.+){0,1} "
+                            + "--db=(.+){0,1} --symmetric{0,1} "
+                            + "--table=(.+){0,1} --tablesize=(\\d+){0,1} "
+                            + "--=(.*){0,2}",
                             args);
 
         if (!options.ok()) {
@@ -49,6 +64,20 @@ public class Main {
             setMessageLevel(options.getInt("--debug"));
         }
 
+        if (options.contains("--server")) {
+            serve(options);
+            return;
+        }
+        if (options.contains("--analyze")) {
+            analyze(options);
+            return;
+        }
+        if (options.contains("--index")) {
+            index(options.getFirst("--index"),
+                  options.contains("--symmetric"));
+            return;
+        }
+
         List<String> files = options.get("--");
         if (!files.isEmpty()) {
             try {
@@ -104,8 +133,127 @@ public class Main {
             }
         }
 
-        return new Game(view, log, reporter, manualPlayer,
-                        new MachinePlayer(), options.contains("--strict"));
+        ExecutorService engine = null;
+        if (gui != null) {
+            engine = Executors.newSingleThreadExecutor((task) -> {
+                Thread thread = new Thread(task, "engine");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        Game game = new Game(view, log, reporter, manualPlayer,
+                             new MachinePlayer(table(options), engine),
+                             options.contains("--strict"));
+        try {
+            if (options.contains("--record")) {
+                game.setRecordFile(new DataOutputStream(
+                    new BufferedOutputStream(
+                        new FileOutputStream(options.getFirst("--record"),
+                                             true))));
+            }
+            if (options.contains("--db")) {
+                game.setDatabase(
+                    new GameDatabase(new File(options.getFirst("--db"))));
+            }
+        } catch (IOException excp) {
+            error(1, "Could not open game file: %s%n", excp.getMessage());
+        }
+        return game;
+    }
+
+    /** Build the index GAMES.idx of the file of game records GAMES,
+     *  keyed by canonical hashes iff CANONICAL. */
+    private static void index(String games, boolean canonical) {
+        try {
+            long start = System.nanoTime();
+            int count = GameDatabase.index(new File(games),
+                                           new File(games + ".idx"),
+                                           canonical);
+            System.err.printf("Indexed %d games in %.2f s.%n", count,
+                              (System.nanoTime() - start) / 1e9);
+        } catch (IOException excp) {
+            error(1, "Could not index games: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Return a new transposition table as indicated by OPTIONS: of
+     *  --tablesize megabytes (or the default size), canonical iff
+     *  --symmetric is present, and kept in the file named by --table, if
+     *  present. */
+    private static TranspositionTable table(CommandArgs options) {
+        int size = MachinePlayer.DEFAULT_TABLE_SIZE;
+        if (options.contains("--tablesize")) {
+            size = Math.max(1, options.getInt("--tablesize"));
+        }
+        boolean canonical = options.contains("--symmetric");
+        if (!options.contains("--table")) {
+            return new TranspositionTable(size, canonical);
+        }
+        try {
+            return TranspositionTable.open(
+                new File(options.getFirst("--table")), size, canonical);
+        } catch (IOException excp) {
+            error(1, "Could not open table file: %s%n", excp.getMessage());
+            return null;
+        }
+    }
+
+    /** Return the number of engine threads indicated by OPTIONS. */
+    private static int engines(CommandArgs options) {
+        if (options.contains("--engines")) {
+            return Math.max(1, options.getInt("--engines"));
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Run a server hosting any number of games, as indicated by
+     *  OPTIONS, until the program is terminated. */
+    private static void serve(CommandArgs options) {
+        try {
+            new Server(options.getInt("--server"), engines(options),
+                       table(options)).serve();
+        } catch (IOException excp) {
+            error(1, "Server failed: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Analyze the file of positions named by OPTIONS (see BatchAnalyzer),
+     *  writing the results on the standard output (or the output file
+     *  in OPTIONS) and the throughput on the standard error. */
+    private static void analyze(CommandArgs options) {
+        int depth = DEFAULT_ANALYSIS_DEPTH;
+        long millis = 0;
+        if (options.contains("--depth")) {
+            depth = Math.max(1, options.getInt("--depth"));
+        }
+        if (options.contains("--time")) {
+            millis = Math.max(1, options.getInt("--time"));
+        }
+        List<String> files = options.get("--");
+        String positions = options.getFirst("--analyze");
+        try (BufferedReader input =
+             new BufferedReader(new FileReader(positions))) {
+            PrintStream output = System.out;
+            if (!files.isEmpty()) {
+                output = new PrintStream(new FileOutputStream(files.get(0)));
+            }
+            long start = System.nanoTime();
+            long count =
+                new BatchAnalyzer(engines(options), depth, millis,
+                                  table(options))
+                .analyze(input, output);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.printf("Analyzed %d positions in %.2f s "
+                              + "(%.1f positions/sec, evaluation cache "
+                              + "hit rate %.1f%%).%n", count, seconds,
+                              count / Math.max(seconds, 1e-9),
+                              100 * MachinePlayer.EVAL_CACHE.hitRate());
+            output.close();
+        } catch (IOException excp) {
+            error(1, "Could not analyze positions: %s%n", excp.getMessage());
+        } catch (IllegalArgumentException excp) {
+            error(1, "Malformed position file: %s%n", excp.getMessage());
+        }
     }
 
     /** Print brief description of the command-line format. */
@@ -116,13 +264,18 @@ public class Main {
 
     /** Print the contents of the resource named NAME on the standard error. */
     static void printResource(String name) {
+        printResource(name, System.err);
+    }
+
+    /** Print the contents of the resource named NAME on OUT. */
+    static void printResource(String name, PrintStream out) {
         try {
             InputStream resourceStream =
                 Main.class.getClassLoader().getResourceAsStream(name);
             BufferedReader str =
                 new BufferedReader(new InputStreamReader(resourceStream));
             for (String s = str.readLine(); s != null; s = str.readLine())  {
-                System.err.println(s);
+                out.println(s);
             }
             str.close();
         } catch (IOException excp) {
@@ -71,6 +71,21 @@ final class Move {
         return _captureMove;
     }
 
+    /** Return a compact encoding of this move (ignoring isCapture()) as an
+     *  integer between 0 and NUM_SQUARES * NUM_SQUARES - 1, inclusive. */
+    int code() {
+        return _from.index() * NUM_SQUARES + _to.index();
+    }
+
+    /** Return the (non-capturing) Move whose code() is CODE, or null if
+     *  CODE does not denote a valid move. */
+    static Move fromCode(int code) {
+        if (code < 0 || code >= NUM_SQUARES * NUM_SQUARES) {
+            return null;
+        }
+        return _moves[code / NUM_SQUARES][code % NUM_SQUARES][0];
+    }
+
     /** Return the length of this move (number of squares moved). */
     int length() {
         return _from.distance(_to);
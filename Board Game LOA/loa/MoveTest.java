@@ -1,6 +1,7 @@
 package loa;
 
 import org.junit.Test;
+import static org.junit.Assert.*;
 import static loa.Piece.*;
 
 public class MoveTest {
@@ -40,4 +41,12 @@ public class MoveTest {
             System.out.println(m.getMoveScore());
         }
     }
+
+    @Test
+    public void testCode() {
+        Board b = new Board(_BOARD1, BP);
+        for (Move m : b.legalMoves()) {
+            assertSame(m, Move.fromCode(m.code()));
+        }
+    }
 }
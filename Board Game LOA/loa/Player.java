@@ -34,6 +34,17 @@ public abstract class Player {
         return _game;
     }
 
+    /** Stop working on any move in progress, if possible.  May be called
+     *  from any thread.  By default, does nothing. */
+    void cancel() {
+    }
+
+    /** Forget any cancel() made while my last move was in progress.
+     *  Called by my game once that move is done.  By default, does
+     *  nothing. */
+    void clearCancel() {
+    }
+
     /** Return true iff I am a manual (human or non-automated) player. */
     abstract boolean isManual();
 
@@ -0,0 +1,40 @@
+package loa;
+
+import java.util.List;
+
+/** An automated Player that chooses uniformly among its legal moves,
+ *  using its Game's random source (see the seed command).  It is the
+ *  "random" engine (see Engines): a baseline opponent.
+ *  @author Qianfei(Ben) Hu
+ */
+class RandomPlayer extends Player {
+
+    /** A new RandomPlayer with no piece or controller (intended to produce
+     *  a template). */
+    RandomPlayer() {
+        this(null, null);
+    }
+
+    /** A RandomPlayer that plays the SIDE pieces in GAME. */
+    RandomPlayer(Piece side, Game game) {
+        super(side, game);
+    }
+
+    @Override
+    String getMove() {
+        List<Move> moves = getBoard().legalMoves();
+        Move choice = moves.get(getGame().randInt(moves.size()));
+        getGame().reportMove(choice);
+        return choice.toString();
+    }
+
+    @Override
+    Player create(Piece piece, Game game) {
+        return new RandomPlayer(piece, game);
+    }
+
+    @Override
+    boolean isManual() {
+        return false;
+    }
+}
@@ -0,0 +1,380 @@
+package loa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Runs the testing scripts (testing/*.in) inside one program, several at
+ *  a time, and compares their output with the expected output (*.std,
+ *  taken to be empty if missing), as testing/tester.py does with a
+ *  separate program for each script.
+ *  Each script is played by a hosted Game that reads the script's
+ *  commands from an Iterator and writes to an in-memory sink.  The
+ *  special commands of test-loa are interpreted as they are by that
+ *  program, except that those needing a second program (#*remote, and
+ *  scripts with a matching -2.in file) cause the script to be skipped.
+ *  Usage:
+ *        java loa.ScriptRunner [ --threads=N ] FILE-1.in ...
+ *  @author Qianfei(Ben) Hu
+ */
+class ScriptRunner {
+
+    /** Seconds allowed for each script. */
+    static final int SCRIPT_TIME_LIMIT = 60;
+
+    /** Matches a special command, with its text in group 1. */
+    static final Pattern SPECIAL = Pattern.compile("\\s*#\\*\\s*(.*?)\\s*");
+    /** Matches a move or win message, with the win message in group
+     *  "win". */
+    static final Pattern MESSAGE =
+        Pattern.compile("\\s*\\*\\s*(?:(?<win>(?:Black|White)\\s+wins\\."
+                        + "|Tie game\\.)|[a-h][1-8]-[a-h][1-8])\\s*");
+
+    /** Run the scripts named in ARGS, printing a line for each and a
+     *  summary.  Exits with 0 iff all scripts that were run passed. */
+    public static void main(String... args) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<File> scripts = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring(10));
+            } else {
+                scripts.add(new File(arg));
+            }
+        }
+        long start = System.nanoTime();
+        List<Result> results = runAll(scripts, Math.max(1, threads));
+        int passed = 0, run = 0;
+        for (Result result : results) {
+            System.out.println(result);
+            if (!result.skipped()) {
+                run += 1;
+                passed += result.passed() ? 1 : 0;
+            }
+        }
+        System.out.printf("%nPassed %d out of %d tests (%d skipped) "
+                          + "in %.2f s.%n", passed, run,
+                          results.size() - run,
+                          (System.nanoTime() - start) / 1e9);
+        System.exit(passed == run ? 0 : 1);
+    }
+
+    /** Return the results of running SCRIPTS on THREADS threads, in the
+     *  order of SCRIPTS. */
+    static List<Result> runAll(List<File> scripts, int threads)
+        throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (File script : scripts) {
+            futures.add(pool.submit(() -> run(script)));
+        }
+        List<Result> results = new ArrayList<>();
+        long deadline = System.nanoTime()
+            + TimeUnit.SECONDS.toNanos(SCRIPT_TIME_LIMIT)
+            * ((scripts.size() + threads - 1) / threads);
+        for (int i = 0; i < scripts.size(); i += 1) {
+            String name = scripts.get(i).getName();
+            try {
+                results.add(futures.get(i).get(
+                    Math.max(0, deadline - System.nanoTime()),
+                    TimeUnit.NANOSECONDS));
+            } catch (TimeoutException excp) {
+                results.add(Result.failed(name, "time limit exceeded"));
+            } catch (ExecutionException excp) {
+                results.add(Result.failed(name, "terminated with "
+                                          + excp.getCause()));
+            }
+        }
+        pool.shutdownNow();
+        return results;
+    }
+
+    /** Return the result of running the script in SCRIPT. */
+    static Result run(File script) throws IOException {
+        String name = script.getName();
+        if (new File(script.getPath().replaceFirst("-1\\.in$", "-2.in"))
+            .exists()) {
+            return Result.skipped(name, "needs two programs");
+        }
+        List<String> lines = Files.readAllLines(script.toPath());
+        Iterator<String> commandLine = lines.iterator();
+        String command = null;
+        while (commandLine.hasNext() && command == null) {
+            Matcher mat = SPECIAL.matcher(commandLine.next());
+            if (mat.matches()) {
+                command = mat.group(1);
+            }
+        }
+        if (command == null || !command.contains("loa.Main")) {
+            return Result.skipped(name, "runs another program");
+        }
+
+        Script session = new Script(lines);
+        PrintStream out = new PrintStream(session.sink(), true);
+        Game game = new Game(new NullView(), null, new TextReporter(out, out),
+                             new HumanPlayer(), new MachinePlayer(),
+                             command.contains("--strict"), session, out);
+        game.play();
+        out.flush();
+        if (session.error() != null) {
+            return Result.failed(name, session.error());
+        }
+        File std = new File(script.getPath().replaceFirst("\\.in$", ".std"));
+        String expected = "";
+        if (std.exists()) {
+            expected = filter(new String(Files.readAllBytes(std.toPath())));
+        }
+        if (!filter(session.output()).equals(expected)) {
+            return Result.failed(name, "Output(s) do not all match "
+                                 + "expected output(s).");
+        }
+        return Result.passed(name);
+    }
+
+    /** Return TEXT with comments, trailing blanks, and blank lines
+     *  removed, as tester.py does before comparing outputs. */
+    static String filter(String text) {
+        text = text.replaceAll("(?m)(?:#.*|[ \\t]+$)", "");
+        return text.replaceAll("(?m)^\\r?\\n", "");
+    }
+
+    /** The outcome of one script. */
+    static class Result {
+        /** The result for script NAME, which passed iff PASSED and was
+         *  skipped iff SKIPPED, for REASON (null if passed). */
+        private Result(String name, boolean passed, boolean skipped,
+                       String reason) {
+            _name = name;
+            _passed = passed;
+            _skipped = skipped;
+            _reason = reason;
+        }
+
+        /** Return a passing result for NAME. */
+        static Result passed(String name) {
+            return new Result(name, true, false, null);
+        }
+
+        /** Return a failing result for NAME, for REASON. */
+        static Result failed(String name, String reason) {
+            return new Result(name, false, false, reason);
+        }
+
+        /** Return a result for NAME, skipped for REASON. */
+        static Result skipped(String name, String reason) {
+            return new Result(name, false, true, reason);
+        }
+
+        /** Return true iff the script passed. */
+        boolean passed() {
+            return _passed;
+        }
+
+        /** Return true iff the script was not run. */
+        boolean skipped() {
+            return _skipped;
+        }
+
+        @Override
+        public String toString() {
+            if (_passed) {
+                return String.format("** %s PASSED.", _name);
+            } else if (_skipped) {
+                return String.format("-- %s skipped (%s).", _name, _reason);
+            } else {
+                return String.format("** %s FAILED (%s).", _name, _reason);
+            }
+        }
+
+        /** Script name. */
+        private final String _name;
+        /** Outcome. */
+        private final boolean _passed, _skipped;
+        /** Why the script failed or was skipped. */
+        private final String _reason;
+    }
+
+    /** The commands of one script, fed to a Game one line at a time, and
+     *  the filtered output of the Game.  Special commands are carried out
+     *  between the ordinary commands, when the Game asks for its next
+     *  line; by then, it has written all output resulting from earlier
+     *  commands. */
+    private static class Script implements Iterator<String> {
+        /** A Script of the commands in LINES (which start with the
+         *  command-line comment). */
+        Script(List<String> lines) {
+            _lines = lines.iterator();
+        }
+
+        /** Return the stream to which the Game should write. */
+        OutputStream sink() {
+            return _sink;
+        }
+
+        /** Return the output collected: board dumps and requested win
+         *  messages. */
+        String output() {
+            scanOutput();
+            return _output.toString();
+        }
+
+        /** Return the reason the script failed, or null. */
+        String error() {
+            return _error;
+        }
+
+        @Override
+        public boolean hasNext() {
+            scanOutput();
+            while (_next == null && _error == null && _lines.hasNext()) {
+                String line = _lines.next();
+                Matcher mat = SPECIAL.matcher(line);
+                if (!mat.matches()) {
+                    _next = line;
+                } else if (_started) {
+                    special(mat.group(1));
+                } else {
+                    _started = true;
+                }
+            }
+            return _next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String line = _next;
+            _next = null;
+            return line;
+        }
+
+        /** Carry out the special command COMMAND. */
+        private void special(String command) {
+            if (command.startsWith("time")) {
+                return;
+            }
+            switch (command) {
+            case "move":
+                if (nextMessage() != null && _win != null) {
+                    fail("unexpected win message");
+                }
+                break;
+            case "move/win":
+            case "move/win+":
+                String message;
+                do {
+                    message = nextMessage();
+                } while (message != null && _win == null);
+                if (_win != null && command.endsWith("+")) {
+                    _output.append(_win).append('\n');
+                }
+                break;
+            case "win+":
+                if (nextMessage() != null) {
+                    if (_win == null) {
+                        fail("expected win; received move");
+                    } else {
+                        _output.append(_win).append('\n');
+                    }
+                }
+                break;
+            default:
+                if (command.startsWith("remote")) {
+                    fail("needs two programs");
+                } else {
+                    fail("Invalid command in testing file: #* " + command);
+                }
+            }
+        }
+
+        /** Remove and return the next move or win message from the Game,
+         *  setting _win to it if it is a win message and otherwise to
+         *  null.  Fails the script and returns null if there is none (the
+         *  Game is waiting for input, so none will come). */
+        private String nextMessage() {
+            String message = _messages.poll();
+            if (message == null) {
+                fail("time limit exceeded waiting for my move");
+                return null;
+            }
+            Matcher mat = MESSAGE.matcher(message);
+            if (!mat.matches()) {
+                fail("malformed move or win message: " + message);
+                return null;
+            }
+            _win = mat.group("win") == null ? null : message.trim();
+            return message;
+        }
+
+        /** Record that the script failed for REASON, unless it already
+         *  has. */
+        private void fail(String reason) {
+            if (_error == null) {
+                _error = reason;
+            }
+        }
+
+        /** Sort the complete lines written to the sink so far into board
+         *  dumps (copied to the output) and messages (queued). */
+        private void scanOutput() {
+            String text = _sink.toString();
+            _sink.reset();
+            _partial.append(text);
+            int end;
+            while ((end = _partial.indexOf("\n")) >= 0) {
+                String line = _partial.substring(0, end);
+                _partial.delete(0, end + 1);
+                line = line.replaceFirst("^.*> *", "");
+                if (_dumping) {
+                    _output.append(line).append('\n');
+                    _dumping = !line.startsWith("===");
+                } else if (line.startsWith("===")) {
+                    _output.append(line).append('\n');
+                    _dumping = true;
+                } else if (line.matches("\\s*\\*.*")) {
+                    _messages.add(line);
+                }
+            }
+        }
+
+        /** Remaining lines of the script. */
+        private final Iterator<String> _lines;
+        /** The next ordinary command, or null if not yet found. */
+        private String _next;
+        /** True once the command-line comment has been passed. */
+        private boolean _started;
+        /** Output written by the Game and not yet scanned. */
+        private final ByteArrayOutputStream _sink =
+            new ByteArrayOutputStream();
+        /** An incomplete last line of output. */
+        private final StringBuilder _partial = new StringBuilder();
+        /** True while copying a board dump. */
+        private boolean _dumping;
+        /** Move and win messages not yet consumed by special commands. */
+        private final ArrayDeque<String> _messages = new ArrayDeque<>();
+        /** The most recent message taken, if it was a win message. */
+        private String _win;
+        /** Collected output. */
+        private final StringBuilder _output = new StringBuilder();
+        /** Reason for failure, or null. */
+        private String _error;
+    }
+}
@@ -0,0 +1,100 @@
+package loa;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class ScriptRunnerTest {
+
+    /** Scripts on which ScriptRunner and tester.py are compared. */
+    static final String[] SCRIPTS = {
+        "init-1.in", "simplemoves-1.in", "test1-1.in"
+    };
+
+    /** Return the testing directory, which is found relative to either
+     *  the project directory or the loa package directory. */
+    private static File testingDir() {
+        for (String name : new String[] { "testing", "../testing" }) {
+            File dir = new File(name);
+            if (new File(dir, "tester.py").isFile()) {
+                return dir;
+            }
+        }
+        fail("cannot find the testing directory");
+        return null;
+    }
+
+    /** Return the verdicts of tester.py on SCRIPTS in DIR, or null if it
+     *  cannot be run. */
+    private static List<Boolean> testerVerdicts(File dir)
+        throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of("python3",
+                                                       "tester.py"));
+        command.addAll(List.of(SCRIPTS));
+        ProcessBuilder builder =
+            new ProcessBuilder(command).directory(dir)
+            .redirectErrorStream(true);
+        builder.environment().put("CLASSPATH",
+                                  System.getProperty("java.class.path"));
+        builder.environment().put("PYTHONDONTWRITEBYTECODE", "1");
+        Process process;
+        try {
+            process = builder.start();
+        } catch (IOException excp) {
+            return null;
+        }
+        String output =
+            new String(process.getInputStream().readAllBytes(),
+                       StandardCharsets.UTF_8);
+        process.waitFor();
+        List<Boolean> verdicts = new ArrayList<>();
+        for (String script : SCRIPTS) {
+            String name = script.replaceAll("\\.in$", "");
+            if (output.contains("** " + name + " PASSED.")) {
+                verdicts.add(true);
+            } else if (output.contains("** " + name + " FAILED")) {
+                verdicts.add(false);
+            } else {
+                return null;
+            }
+        }
+        return verdicts;
+    }
+
+    @Test
+    public void testAgreesWithTester() throws Exception {
+        File dir = testingDir();
+        List<Boolean> expected = testerVerdicts(dir);
+        assumeNotNull(expected);
+        for (int i = 0; i < SCRIPTS.length; i += 1) {
+            ScriptRunner.Result result =
+                ScriptRunner.run(new File(dir, SCRIPTS[i]));
+            assertFalse("skipped " + result, result.skipped());
+            assertEquals("verdict on " + SCRIPTS[i], expected.get(i),
+                         result.passed());
+        }
+    }
+
+    @Test
+    public void testPassesStaffScripts() throws IOException {
+        File dir = testingDir();
+        for (String script : new String[] { "init-1.in",
+                                            "simplemoves-1.in" }) {
+            ScriptRunner.Result result =
+                ScriptRunner.run(new File(dir, script));
+            assertTrue(result.toString(), result.passed());
+        }
+    }
+
+    @Test
+    public void testFilter() {
+        assertEquals("  a\nb c\n",
+                     ScriptRunner.filter("  a  \n\n# comment\nb c\t\n"));
+    }
+}
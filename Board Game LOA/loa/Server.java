@@ -0,0 +1,91 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static loa.Main.*;
+import static loa.Utils.*;
+
+/** A server that hosts many games of Lines of Action in one program.
+ *  Clients connect to a port on the loopback interface, and each
+ *  connection is a session that plays one Game using the same
+ *  line-oriented commands as the terminal version.  All sessions share
+ *  one bounded pool of engine threads and one transposition table, so
+ *  the number of idle or human-paced sessions is limited only by the
+ *  number of open connections.
+ *  @author Qianfei(Ben) Hu
+ */
+class Server {
+
+    /** Maximum number of pending connections. */
+    static final int BACKLOG = 50;
+
+    /** A server listening on PORT (0 for any free port) that runs up to
+     *  ENGINES searches at once and shares transposition table TABLE
+     *  among all its games. */
+    Server(int port, int engines, TranspositionTable table) {
+        _port = port;
+        _engines = Executors.newFixedThreadPool(engines);
+        _engineTemplate = new MachinePlayer(table, _engines);
+        _sessions = Executors.newCachedThreadPool();
+    }
+
+    /** Accept and run sessions until the program is terminated. */
+    void serve() throws IOException {
+        try (ServerSocket listener =
+             new ServerSocket(_port, BACKLOG,
+                              InetAddress.getLoopbackAddress())) {
+            System.out.printf("Lines of Action server.  Version %s.  "
+                              + "Listening on port %d.%n",
+                              VERSION, listener.getLocalPort());
+            while (true) {
+                Socket client = listener.accept();
+                _sessions.execute(() -> runSession(client));
+            }
+        } finally {
+            _sessions.shutdownNow();
+            _engines.shutdownNow();
+        }
+    }
+
+    /** Play one game with the client on CLIENT, closing the connection
+     *  when the client quits or disconnects. */
+    private void runSession(Socket client) {
+        try (client) {
+            runSession(new BufferedReader(
+                           new InputStreamReader(client.getInputStream())),
+                       new PrintStream(client.getOutputStream(), true));
+        } catch (IOException | UncheckedIOException excp) {
+            debug(1, "session ended: %s", excp.getMessage());
+        }
+    }
+
+    /** Play one game reading commands from IN and writing to OUT,
+     *  returning when the client quits or IN ends. */
+    void runSession(BufferedReader in, PrintStream out) {
+        Game game = new Game(new NullView(), null,
+                             new TextReporter(out, out),
+                             new HumanPlayer(), _engineTemplate, false,
+                             in.lines().iterator(), out);
+        out.printf("Lines of Action.  Version %s.%n"
+                   + "Type ? for help.%n", VERSION);
+        game.play();
+    }
+
+    /** Port on which to listen. */
+    private final int _port;
+    /** Threads that run the engines' searches for all sessions. */
+    private final ExecutorService _engines;
+    /** Threads that run sessions, one per connected client. */
+    private final ExecutorService _sessions;
+    /** Template for the automated players of all sessions. */
+    private final MachinePlayer _engineTemplate;
+}
@@ -0,0 +1,107 @@
+package loa;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static loa.Move.mv;
+
+public class ServerTest {
+
+    /** Return a board after playing MOVES from the initial position. */
+    private static Board play(String... moves) {
+        Board b = new Board();
+        for (String move : moves) {
+            b.makeMove(mv(move));
+        }
+        return b;
+    }
+
+    /** Return the output of a hosted game with manual players reading
+     *  the lines of INPUT. */
+    private static String host(String... input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        Game game = new Game(new NullView(), null, new TextReporter(out, out),
+                             new HumanPlayer(), new HumanPlayer(), false,
+                             List.of(input).iterator(), out);
+        game.play();
+        return bytes.toString();
+    }
+
+    @Test
+    public void testHostedGameEnds() {
+        String out = host("b1-b3", "dump");
+        assertTrue("move played", out.contains(play("b1-b3").toString()));
+
+        out = host("b1-b3", "quit", "a2-c2", "dump");
+        assertFalse("nothing read after quit",
+                    out.contains(play("b1-b3").toString()));
+        assertFalse("no move after quit",
+                    out.contains(play("b1-b3", "a2-c2").toString()));
+
+        out = host("b1-b4", "q");
+        assertTrue("errors reported to the session",
+                   out.contains("Error"));
+    }
+
+    /** The output of one session. */
+    private static class Session extends Thread {
+        /** A session on SERVER reading the lines of INPUT. */
+        Session(Server server, String... input) {
+            _server = server;
+            _input = String.join("\n", input) + "\n";
+        }
+
+        @Override
+        public void run() {
+            _server.runSession(
+                new BufferedReader(new StringReader(_input)),
+                new PrintStream(_output, true));
+        }
+
+        /** Return what the session wrote. */
+        String output() {
+            return _output.toString();
+        }
+
+        /** The server. */
+        private final Server _server;
+        /** Input lines. */
+        private final String _input;
+        /** Output written. */
+        private final ByteArrayOutputStream _output =
+            new ByteArrayOutputStream();
+    }
+
+    @Test
+    public void testSessionsAreSeparate() throws InterruptedException {
+        Server server = new Server(0, 1, new TranspositionTable(1));
+        Session first =
+            new Session(server, "manual white", "b1-b3", "a2-c2", "dump");
+        Session second =
+            new Session(server, "manual white", "g1-g3", "dump", "quit",
+                        "dump");
+        first.start();
+        second.start();
+        first.join();
+        second.join();
+        String one = first.output(), two = second.output();
+        assertTrue("greeting", one.startsWith("Lines of Action."));
+        assertTrue("first session's board",
+                   one.contains(play("b1-b3", "a2-c2").toString()));
+        assertTrue("second session's board",
+                   two.contains(play("g1-g3").toString()));
+        assertFalse("boards not shared",
+                    two.contains(play("b1-b3").toString()));
+        assertFalse("sessions not shared",
+                    one.contains(play("g1-g3").toString()));
+        assertEquals("second session stopped at quit",
+                     two.indexOf("Next move:"),
+                     two.lastIndexOf("Next move:"));
+    }
+}
@@ -0,0 +1,87 @@
+package loa;
+
+import static loa.Piece.*;
+import static loa.Square.*;
+
+/** The symmetries of a Lines of Action position.  Each of the eight
+ *  reflections and rotations of the board, optionally combined with
+ *  exchanging the colors of all pieces (and the side to move), maps a
+ *  position onto one that is the same game, up to renaming.  Symmetries
+ *  are numbered from 0 (IDENTITY) to COUNT - 1; those numbered
+ *  GEOMETRIC or above exchange colors.
+ *  @author Qianfei(Ben) Hu
+ */
+class Symmetry {
+
+    /** Number of reflections and rotations of the board. */
+    static final int GEOMETRIC = 8;
+
+    /** Number of symmetries. */
+    static final int COUNT = 2 * GEOMETRIC;
+
+    /** The symmetry that changes nothing. */
+    static final int IDENTITY = 0;
+
+    /** Return the image of SQ under symmetry SYM. */
+    static Square apply(int sym, Square sq) {
+        return SQUARE_IMAGE[sym % GEOMETRIC][sq.index()];
+    }
+
+    /** Return the image of MOVE (possibly null) under symmetry SYM. */
+    static Move apply(int sym, Move move) {
+        if (move == null) {
+            return null;
+        }
+        return Move.mv(apply(sym, move.getFrom()), apply(sym, move.getTo()),
+                       move.isCapture());
+    }
+
+    /** Return the image of piece or side P under symmetry SYM. */
+    static Piece apply(int sym, Piece p) {
+        if (!swapsColors(sym) || p == EMP || p == null) {
+            return p;
+        }
+        return p.opposite();
+    }
+
+    /** Return true iff symmetry SYM exchanges colors. */
+    static boolean swapsColors(int sym) {
+        return sym >= GEOMETRIC;
+    }
+
+    /** Return the symmetry that undoes SYM. */
+    static int inverse(int sym) {
+        return INVERSE[sym];
+    }
+
+    /** SQUARE_IMAGE[g][s] is the image of the square with index s under
+     *  geometric symmetry g. */
+    private static final Square[][] SQUARE_IMAGE =
+        new Square[GEOMETRIC][NUM_SQUARES];
+
+    /** INVERSE[s] is the inverse of symmetry s. */
+    private static final int[] INVERSE = new int[COUNT];
+
+    static {
+        int last = BOARD_SIZE - 1;
+        for (Square sq : ALL_SQUARES) {
+            int c = sq.col(), r = sq.row();
+            Square[] images = {
+                sq(c, r), sq(last - c, r), sq(c, last - r),
+                sq(last - c, last - r), sq(r, c), sq(last - r, c),
+                sq(r, last - c), sq(last - r, last - c)
+            };
+            for (int g = 0; g < GEOMETRIC; g += 1) {
+                SQUARE_IMAGE[g][sq.index()] = images[g];
+            }
+        }
+        for (int g = 0; g < GEOMETRIC; g += 1) {
+            for (int h = 0; h < GEOMETRIC; h += 1) {
+                if (apply(h, apply(g, sq(1, 2))) == sq(1, 2)) {
+                    INVERSE[g] = h;
+                    INVERSE[g + GEOMETRIC] = h + GEOMETRIC;
+                }
+            }
+        }
+    }
+}
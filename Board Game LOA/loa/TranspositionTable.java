@@ -0,0 +1,253 @@
+package loa;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+/** A fixed-size table of search results, keyed by Board.hash() or, for a
+ *  canonical table, by Board.canonicalHash().  One table may be shared by
+ *  any number of searching threads.  Entries are written
+ *  without locking: each slot holds a data word and the position key XORed
+ *  with that data word, so a slot torn by two simultaneous writers simply
+ *  fails its key check on the next probe and reads as a miss.
+ *
+ *  A table may also live in a memory-mapped file (see open), in which case
+ *  it survives the program and may be shared by several programs on one
+ *  host at once.  The XORed key then doubles as a checksum of each entry
+ *  against writes from other processes.  Such a file contains
+ *        long    FILE_MAGIC
+ *        int     FILE_FORMAT
+ *        int     1 if canonical, else 0
+ *        long    number of slots, N (a power of 2)
+ *        long    unused
+ *        long[2N] the slots
+ *  @author Qianfei(Ben) Hu
+ */
+class TranspositionTable {
+
+    /** Bound types of stored values.  EXACT values are exact minimax
+     *  values; LOWER values are lower bounds (the search failed high);
+     *  UPPER values are upper bounds (the search failed low). */
+    static final int EXACT = 0, LOWER = 1, UPPER = 2;
+
+    /** Size in bytes of one slot. */
+    static final int SLOT_BYTES = 2 * Long.BYTES;
+
+    /** Identifies a transposition table file. */
+    static final long FILE_MAGIC = 0x4c4f415454424c31L;
+    /** Version of the format of entries in a table file.  Must change
+     *  whenever the meaning of a stored value or move does. */
+    static final int FILE_FORMAT = 1;
+    /** Size in bytes of the header of a table file. */
+    static final int FILE_HEADER_BYTES = 4 * Long.BYTES;
+    /** Maximum number of slots in a table file (one mapping). */
+    static final int MAX_FILE_SLOTS = 1 << 26;
+
+    /** A table occupying about MEGABYTES megabytes (rounded down to a
+     *  power-of-two number of slots), keyed by Board.hash(). */
+    TranspositionTable(int megabytes) {
+        this(megabytes, false);
+    }
+
+    /** A table occupying about MEGABYTES megabytes, which is canonical
+     *  iff CANONICAL.  Clients of a canonical table key it on canonical
+     *  hashes and store entries as they apply to the canonical form of a
+     *  position (see transform), so that one entry serves every position
+     *  that is an image of another under a symmetry. */
+    TranspositionTable(int megabytes, boolean canonical) {
+        this(LongBuffer.wrap(new long[2 * slots(megabytes, 1 << 29)]),
+             canonical);
+    }
+
+    /** A table whose slots are in SLOTS (key and data word of slot I at
+     *  positions 2I and 2I + 1), canonical iff CANONICAL. */
+    private TranspositionTable(LongBuffer slots, boolean canonical) {
+        _canonical = canonical;
+        _slots = slots;
+        _mask = slots.capacity() / 2 - 1;
+    }
+
+    /** Return a table kept in the file FILE, creating the file with room
+     *  for about MEGABYTES megabytes of entries if it does not exist.  An
+     *  existing file keeps its size and contents.  The table is canonical
+     *  iff CANONICAL, which must agree with an existing file.  Several
+     *  programs may have the same file open at once. */
+    static TranspositionTable open(File file, int megabytes,
+                                   boolean canonical) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            long slots;
+            FileLock lock = channel.lock();
+            try {
+                ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+                if (raf.length() == 0) {
+                    slots = slots(megabytes, MAX_FILE_SLOTS);
+                    header.putLong(FILE_MAGIC).putInt(FILE_FORMAT)
+                        .putInt(canonical ? 1 : 0).putLong(slots)
+                        .putLong(0).flip();
+                    channel.write(header, 0);
+                    raf.setLength(FILE_HEADER_BYTES + slots * SLOT_BYTES);
+                } else {
+                    channel.read(header, 0);
+                    header.flip();
+                    if (header.remaining() < FILE_HEADER_BYTES
+                        || header.getLong() != FILE_MAGIC
+                        || header.getInt() != FILE_FORMAT) {
+                        throw new IOException("not a transposition table "
+                                              + "file: " + file);
+                    }
+                    if ((header.getInt() == 1) != canonical) {
+                        throw new IOException("canonical setting does not "
+                                              + "match table file: " + file);
+                    }
+                    slots = header.getLong();
+                    if (slots <= 0 || slots > MAX_FILE_SLOTS
+                        || Long.bitCount(slots) != 1
+                        || raf.length()
+                           < FILE_HEADER_BYTES + slots * SLOT_BYTES) {
+                        throw new IOException("corrupt transposition table "
+                                              + "file: " + file);
+                    }
+                }
+            } finally {
+                lock.release();
+            }
+            MappedByteBuffer map =
+                channel.map(FileChannel.MapMode.READ_WRITE,
+                            FILE_HEADER_BYTES, slots * SLOT_BYTES);
+            return new TranspositionTable(map.asLongBuffer(), canonical);
+        }
+    }
+
+    /** Return the number of slots (a power of 2, at most MAX) that fit
+     *  in about MEGABYTES megabytes. */
+    private static int slots(int megabytes, int max) {
+        long slots = Math.max(1, ((long) megabytes << 20) / SLOT_BYTES);
+        return Integer.highestOneBit((int) Math.min(slots, max));
+    }
+
+    /** Return the data word stored for KEY, or 0 if there is none.  Use
+     *  value, depth, bound, and move to unpack the result. */
+    long probe(long key) {
+        int i = 2 * ((int) key & _mask);
+        long data = _slots.get(i + 1);
+        if (data != 0 && (_slots.get(i) ^ data) == key) {
+            return data;
+        }
+        return 0;
+    }
+
+    /** Record that the position with hash KEY has VALUE of type BOUND
+     *  when searched to DEPTH, with best move BEST (possibly null).
+     *  Replaces an existing entry for another position, or a shallower
+     *  entry for the same position. */
+    void store(long key, int depth, int value, int bound, Move best) {
+        store(key, pack(depth, value, bound, best));
+    }
+
+    /** Record the data word DATA (as from pack) for the position with
+     *  hash KEY, subject to the same replacement rule as the other store
+     *  method. */
+    void store(long key, long data) {
+        int i = 2 * ((int) key & _mask);
+        long old = _slots.get(i + 1);
+        if (old != 0 && (_slots.get(i) ^ old) == key
+            && depth(old) > depth(data)) {
+            return;
+        }
+        _slots.put(i + 1, data);
+        _slots.put(i, key ^ data);
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        for (int i = 0; i < _slots.capacity(); i += 1) {
+            _slots.put(i, 0);
+        }
+    }
+
+    /** Return true iff this table is keyed by canonical hashes. */
+    boolean canonical() {
+        return _canonical;
+    }
+
+    /** Return the number of slots in this table. */
+    int size() {
+        return _mask + 1;
+    }
+
+    /** Return the value recorded in DATA. */
+    static int value(long data) {
+        return (int) data;
+    }
+
+    /** Return the search depth recorded in DATA. */
+    static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /** Return the bound type (EXACT, LOWER, or UPPER) recorded in DATA. */
+    static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /** Return the best move recorded in DATA, or null if none. */
+    static Move move(long data) {
+        int m = (int) (data >>> MOVE_SHIFT) & MOVE_MASK;
+        if (m == 0) {
+            return null;
+        }
+        return Move.fromCode(m - 1);
+    }
+
+    /** Return the data word recording DEPTH, VALUE, BOUND, and BEST. */
+    static long pack(int depth, int value, int bound, Move best) {
+        long m = best == null ? 0 : best.code() + 1;
+        return (value & 0xffffffffL)
+            | ((long) (depth & DEPTH_MASK) << DEPTH_SHIFT)
+            | ((long) (bound & BOUND_MASK) << BOUND_SHIFT)
+            | (m << MOVE_SHIFT)
+            | USED;
+    }
+
+    /** Return DATA (a data word, or 0) converted to apply to the image
+     *  under symmetry SYM of the position it describes.  That is, the best
+     *  move is mapped by SYM and, if SYM exchanges colors, the value (which
+     *  is from white's point of view) is negated and the bound reversed. */
+    static long transform(long data, int sym) {
+        if (data == 0 || sym == Symmetry.IDENTITY) {
+            return data;
+        }
+        int value = value(data), bound = bound(data);
+        if (Symmetry.swapsColors(sym)) {
+            value = -value;
+            bound = bound == LOWER ? UPPER : bound == UPPER ? LOWER : EXACT;
+        }
+        return pack(depth(data), value, bound,
+                    Symmetry.apply(sym, move(data)));
+    }
+
+    /** Layout of a data word: value in bits 0-31, depth in bits 32-39,
+     *  bound in bits 40-41, and move (from * 64 + to + 1, or 0) in bits
+     *  42-54.  Bit 62 is always set, so that no stored word is 0. */
+    private static final int
+        DEPTH_SHIFT = 32, DEPTH_MASK = 0xff,
+        BOUND_SHIFT = 40, BOUND_MASK = 0x3,
+        MOVE_SHIFT = 42, MOVE_MASK = 0x1fff;
+
+    /** Marks a data word as occupied. */
+    private static final long USED = 1L << 62;
+
+    /** True iff keyed by canonical hashes. */
+    private final boolean _canonical;
+    /** Key of each slot XORed with its data word, followed by the data
+     *  word, for each slot in turn. */
+    private final LongBuffer _slots;
+    /** Number of slots less one (the number of slots is a power of 2). */
+    private final int _mask;
+}
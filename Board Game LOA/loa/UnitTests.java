@@ -17,6 +17,10 @@ public class UnitTests {
         textui.runClasses(BoardTest.class);
         textui.runClasses(MachinePlayerTest.class);
         textui.runClasses(MoveTest.class);
+        textui.runClasses(GameDatabaseTest.class);
+        textui.runClasses(BatchAnalyzerTest.class);
+        textui.runClasses(ServerTest.class);
+        textui.runClasses(ScriptRunnerTest.class);
     }
 
     /** A dummy test to avoid complaint. */
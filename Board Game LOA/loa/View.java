@@ -9,4 +9,10 @@ interface View {
     /** Update the current view according to the game on CONTROLLER. */
     void update(Game controller);
 
+    /** Show that an automated player, searching DEPTH plies ahead, has
+     *  so far found BEST with VALUE.  Called from the searching thread.
+     *  By default, does nothing. */
+    default void searchProgress(Move best, int depth, int value) {
+    }
+
 }
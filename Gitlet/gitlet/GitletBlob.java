@@ -2,25 +2,40 @@ package gitlet;
 
 import java.io.File;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 /** GitletBlob class of the file.
  * @author Qianfei(Ben) Hu
  */
 
 public class GitletBlob implements Serializable {
+    /** Serialization version; blobs are stored inside commits. */
+    private static final long serialVersionUID = 2174728792961462244L;
+
     /** Return the version of the file. */
     public int getVersion() {
         return version;
     }
 
-    /** Constructor of GitletBlob.
+    /** Constructor of GitletBlob.  Stores the current contents of the
+     * file.
      * @param file the name of the file to be inited.
      * @param ver the version of the file to be inited.
      */
     public GitletBlob(String file, int ver) {
+        this(file, ver, GitletObjects.writeFile(new File(file),
+                GitletObjects.BLOB));
+    }
+
+    /** Constructor of GitletBlob for contents already stored.
+     * @param file the name of the file to be inited.
+     * @param ver the version of the file to be inited.
+     * @param hash the hash of the stored contents.
+     */
+    public GitletBlob(String file, int ver, String hash) {
         filename = file;
         version = ver;
-        hashcode = Utils.sha1(Utils.readContentsAsString(new File(filename)));
+        hashcode = hash;
     }
 
     /** Return the name of the file. */
@@ -37,7 +52,26 @@ public class GitletBlob implements Serializable {
      * @return the file of this blob.
      * */
     public File getFile() {
-        return new File(".gitlet/" + hashcode);
+        return GitletObjects.getObjectFile(hashcode);
+    }
+
+    /** Return the stored contents of this blob. */
+    public byte[] readContents() {
+        return GitletObjects.read(hashcode, GitletObjects.BLOB);
+    }
+
+    /** Return the stored contents of this blob as a String. */
+    public String readContentsAsString() {
+        return new String(readContents(), StandardCharsets.UTF_8);
+    }
+
+    /** Write the stored contents of this blob to FILE, creating the
+     * directories holding it if need be.
+     * @param file the file to write.
+     * */
+    public void writeTo(File file) {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        GitletObjects.copyTo(hashcode, GitletObjects.BLOB, file);
     }
 
     /** The version of this blob. */
@@ -2,12 +2,18 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -29,66 +35,162 @@ public class GitletCommandRunner {
                     + "already exists in the current directory.");
             return 0;
         } else {
+            gitletFolder.mkdirs();
+
             GitletCommit firstCommit = new GitletCommit(null);
             firstCommit.finish("initial commit");
 
             GitletData gitletData = new GitletData();
             gitletData.addGitletCommit(firstCommit);
-
-            gitletFolder.mkdirs();
-
-            File gitletDataFile = new File(".gitlet/data");
-            Utils.writeObject(gitletDataFile, gitletData);
+            GitletData.saveGitletData(gitletData);
             return 0;
         }
     }
 
-    /** The ADD command.
-     * @param filename the name of the file to be added
+    /** The ADD command: stage the files named by PATHS.  Each path is a
+     * file, the working directory (all of its files) or a glob pattern
+     * such as "*.txt", matched against the names of the working files.
+     * The repository is loaded and the stage saved once, however many
+     * files are added, and the files are hashed and stored together.
+     * @param paths the files, directories and patterns to add.
      * @return exit code.
      */
-    public static int add(String filename) throws IOException {
-        File gitletFile = new File(filename);
-        boolean exists = gitletFile.exists();
-
-        if (!exists) {
-            System.out.println("File does not exist.");
+    public static int add(List<String> paths) {
+        List<String> filenames = expandPaths(paths);
+        if (filenames == null) {
             return 0;
-        } else {
-            GitletData gitletData = GitletData.loadGitletData();
-            GitletStage gitletStage = GitletStage.loadGitletStage();
+        }
+        GitletData gitletData = GitletData.loadGitletData();
+        GitletStage gitletStage = GitletStage.loadGitletStage();
+        GitletIndex index = GitletIndex.load();
+        List<String> hashes = index.storeAll(filenames);
+        index.save();
 
+        for (int i = 0; i < filenames.size(); i += 1) {
+            String filename = filenames.get(i);
+            String contentHash = hashes.get(i);
             GitletBlob oldGitletBlob = gitletData.getBlob(filename);
-            String contentHash = Utils.sha1(Utils.
-                    readContentsAsString(gitletFile));
-
             gitletStage.getRemovedBlobMap().remove(filename);
-            GitletStage.saveGitletStage(gitletStage);
 
             if (oldGitletBlob != null && oldGitletBlob.getHash().
                     equals(contentHash)) {
-                if (gitletStage.getAddedBlobMap().containsKey(filename)) {
-                    File dest = GitletStage.getStageFile(
-                            gitletStage.getAddedBlobMap().get(filename));
-                    Utils.restrictedDelete(dest);
-                    gitletStage.unstageAddedBlob(filename);
-                } else {
-                    return 0;
-                }
+                gitletStage.unstageAddedBlob(filename);
             } else {
                 int version = 1;
                 if (oldGitletBlob != null) {
                     version = oldGitletBlob.getVersion() + 1;
                 }
-                GitletBlob updateBlob = new GitletBlob(filename, version);
-                File dest = GitletStage.getStageFile(updateBlob);
-                Utils.writeContents(dest, Utils.
-                        readContentsAsString(gitletFile));
+                GitletBlob updateBlob = new GitletBlob(filename, version,
+                        contentHash);
                 gitletStage.stageAddedBlob(filename, updateBlob);
             }
+        }
 
-            GitletStage.saveGitletStage(gitletStage);
-            return 0;
+        GitletStage.saveGitletStage(gitletStage);
+        return 0;
+    }
+
+    /** Return the names of the working files named by PATHS, in order and
+     * without repeats, or print why not and return null if some path
+     * names no file.
+     * @param paths the files, directories and patterns to add.
+     */
+    private static List<String> expandPaths(List<String> paths) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        List<String> workingFiles = workingFiles();
+        for (String path : paths) {
+            File file = new File(path);
+            String name = Paths.get(path).normalize().toString()
+                    .replace(File.separatorChar, '/');
+            if (file.isAbsolute() || name.startsWith("..")) {
+                System.out.println("File does not exist.");
+                return null;
+            } else if (file.isFile()) {
+                result.add(name);
+            } else if (file.isDirectory()) {
+                String dir = name.isEmpty() ? "" : name + "/";
+                for (String filename : workingFiles) {
+                    if (filename.startsWith(dir)) {
+                        result.add(filename);
+                    }
+                }
+            } else if (path.matches(".*[*?\\[{].*")) {
+                PathMatcher matcher = FileSystems.getDefault()
+                        .getPathMatcher("glob:" + path);
+                int size = result.size();
+                for (String filename : workingFiles) {
+                    if (matcher.matches(Paths.get(filename))) {
+                        result.add(filename);
+                    }
+                }
+                if (result.size() == size) {
+                    System.out.println("File does not exist.");
+                    return null;
+                }
+            } else {
+                System.out.println("File does not exist.");
+                return null;
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the paths of the files in the working directory and its
+     * subdirectories, other than those in .gitlet, in order.  Directory
+     * names in a path are separated by "/". */
+    static List<String> workingFiles() {
+        List<String> result = new ArrayList<>();
+        workingFiles(new File("."), "", result);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Add the paths of the files in DIR, whose path is PREFIX, and in its
+     * subdirectories to RESULT.  Links to directories are not followed.
+     * @param dir a directory.
+     * @param prefix its path, ending in "/" unless empty.
+     * @param result the paths found so far.
+     */
+    private static void workingFiles(File dir, String prefix,
+                                     List<String> result) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File file = new File(dir, name);
+            if (file.isFile()) {
+                result.add(prefix + name);
+            } else if (file.isDirectory() && !Files.isSymbolicLink(
+                    file.toPath()) && !(prefix.isEmpty()
+                                        && name.equals(".gitlet"))) {
+                workingFiles(file, prefix + name + "/", result);
+            }
+        }
+    }
+
+    /** Delete the working file PATH, and then any directories holding it
+     * that are left empty, as Utils.restrictedDelete does for files in
+     * the working directory itself.  PATH may also be an empty directory,
+     * left where a file is to be written; a directory holding files is
+     * left alone.
+     * @param path the path of the file.
+     */
+    private static void deleteWorkingFile(String path) {
+        if (!new File(".gitlet").isDirectory()) {
+            throw new IllegalArgumentException("not .gitlet working "
+                    + "directory");
+        }
+        File file = new File(path);
+        if (!file.delete()) {
+            return;
+        }
+        for (File dir = file.getParentFile(); dir != null;
+             dir = dir.getParentFile()) {
+            String[] rest = dir.list();
+            if (rest == null || rest.length > 0 || !dir.delete()) {
+                break;
+            }
         }
     }
 
@@ -108,7 +210,7 @@ public class GitletCommandRunner {
         } else if (gitletData.getCurrentCommit().getBlob(filename) != null) {
             gitletStage.stageRemovedBlod(filename);
             if (exists) {
-                Utils.restrictedDelete(gitletFile);
+                deleteWorkingFile(filename);
             }
         } else {
             System.out.println("No reason to remove the file.");
@@ -132,14 +234,6 @@ public class GitletCommandRunner {
         GitletStage gitletStage = GitletStage.loadGitletStage();
 
         GitletData gitletData = GitletData.loadGitletData();
-        GitletCommit parent = commit.getParent();
-
-        if (parent != null) {
-            HashMap<String, GitletBlob> blobMap = parent.getBlobMap();
-            for (Entry<String, GitletBlob> entry : blobMap.entrySet()) {
-                commit.addBlob(entry.getKey(), entry.getValue());
-            }
-        }
 
         for (Entry<String, GitletBlob> entry : gitletStage.
                 getAddedBlobMap().entrySet()) {
@@ -178,12 +272,6 @@ public class GitletCommandRunner {
         GitletCommit currentCommit = gitletData.getCurrentCommit();
 
         GitletCommit commit = new GitletCommit(currentCommit);
-        if (currentCommit != null) {
-            HashMap<String, GitletBlob> blobMap = currentCommit.getBlobMap();
-            for (Entry<String, GitletBlob> entry : blobMap.entrySet()) {
-                commit.addBlob(entry.getKey(), entry.getValue());
-            }
-        }
 
         for (Entry<String, GitletBlob> entry : gitletStage.
                 getAddedBlobMap().entrySet()) {
@@ -235,10 +323,9 @@ public class GitletCommandRunner {
         GitletData gitletData = GitletData.loadGitletData();
 
         SimpleDateFormat dateFm = new SimpleDateFormat("Z");
-        for (Entry<String, GitletCommit> entry : gitletData.
-                getCommitMap().entrySet()) {
+        for (String commitId : gitletData.getAllCommitsID()) {
 
-            GitletCommit tmp = entry.getValue();
+            GitletCommit tmp = gitletData.getCommit(commitId);
             System.out.println("===");
             System.out.println("commit " + tmp.getHash());
 
@@ -261,10 +348,9 @@ public class GitletCommandRunner {
         GitletData gitletData = GitletData.loadGitletData();
         boolean found = false;
 
-        for (Entry<String, GitletCommit> entry : gitletData.
-                getCommitMap().entrySet()) {
+        for (String commitId : gitletData.getAllCommitsID()) {
 
-            GitletCommit tmp = entry.getValue();
+            GitletCommit tmp = gitletData.getCommit(commitId);
             if (tmp.getMessage().equals(message)) {
                 found = true;
                 System.out.println(tmp.getHash());
@@ -375,28 +461,30 @@ public class GitletCommandRunner {
         System.out.println();
 
         System.out.println("=== Modifications Not Staged For Commit ===");
-        List<String> filenameList = Utils.plainFilenamesIn(".");
+        List<String> filenameList = workingFiles();
+        HashSet<String> filenameSet = new HashSet<>(filenameList);
         List<String> notStagedList = new ArrayList<String>();
+        List<String> trackedList = new ArrayList<String>();
         for (String filename : filenameList) {
-            if (currentCommit.getBlobMap().containsKey(filename)) {
-                if (!gitletStage.getAddedBlobMap().containsKey(filename)) {
-                    File gitletFile = new File(filename);
-                    File commitBlobFile = currentCommit.getBlobMap().
-                            get(filename).getFile();
-                    String contentHash = Utils.sha1(Utils.
-                            readContentsAsString(gitletFile));
-                    String commitBlobContentHash = Utils.sha1(
-                            Utils.readContentsAsString(commitBlobFile));
-
-                    if (!contentHash.equals(commitBlobContentHash)) {
-                        notStagedList.add(filename + " (modified)");
-                    }
-                }
+            if (currentCommit.getBlobMap().containsKey(filename)
+                    && !gitletStage.getAddedBlobMap().containsKey(filename)) {
+                trackedList.add(filename);
+            }
+        }
+        GitletIndex index = GitletIndex.load();
+        List<String> hashList = index.hashAll(trackedList);
+        index.save();
+        for (int i = 0; i < trackedList.size(); i += 1) {
+            String filename = trackedList.get(i);
+            String commitBlobContentHash = currentCommit.
+                    getBlobMap().get(filename).getHash();
+            if (!hashList.get(i).equals(commitBlobContentHash)) {
+                notStagedList.add(filename + " (modified)");
             }
         }
 
         for (String filename : currentCommit.getBlobMap().keySet()) {
-            if (filenameList.indexOf(filename) < 0
+            if (!filenameSet.contains(filename)
                     && !gitletStage.getRemovedBlobMap().contains(filename)) {
                 notStagedList.add(filename + " (deleted)");
             }
@@ -435,12 +523,13 @@ public class GitletCommandRunner {
         GitletCommit currentCommit = gitletData.getCurrentCommit();
         GitletStage gitletStage = GitletStage.loadGitletStage();
 
-        if (!gitletData.getCommitMap().containsKey(commitId)) {
+        GitletCommit destCommit = gitletData.getCommit(commitId);
+        if (destCommit == null) {
             System.out.println("No commit with that id exists.");
             return 0;
         }
 
-        List<String> filenameList = Utils.plainFilenamesIn(".");
+        List<String> filenameList = workingFiles();
         for (String filename : filenameList) {
             if (!filename.startsWith(".")
                     && !currentCommit.getBlobMap().containsKey(filename)
@@ -451,22 +540,17 @@ public class GitletCommandRunner {
             }
         }
 
-        GitletCommit destCommit = gitletData.getCommitMap().get(commitId);
         for (String filename : filenameList) {
-            Utils.restrictedDelete(filename);
+            if (!destCommit.getBlobMap().containsKey(filename)) {
+                deleteWorkingFile(filename);
+            }
         }
+        GitletIndex index = GitletIndex.load();
         for (Entry<String, GitletBlob> entry
                 : destCommit.getBlobMap().entrySet()) {
-            GitletBlob blob = entry.getValue();
-            File workFile = new File(blob.getFilename());
-            boolean exists = workFile.exists();
-            if (exists) {
-                Utils.restrictedDelete(workFile);
-            }
-
-            File gitFile = blob.getFile();
-            Utils.writeContents(workFile, Utils.readContentsAsString(gitFile));
+            checkoutBlob(entry.getValue(), index);
         }
+        index.save();
 
         gitletStage.clear();
         GitletStage.saveGitletStage(gitletStage);
@@ -489,12 +573,21 @@ public class GitletCommandRunner {
             return 0;
         }
         boolean conflict = false;
-        GitletCommit merged = data.getBranchMap().get(mergedName);
+        GitletCommit merged = data.getBranchCommit(mergedName);
         HashSet<String> set = new HashSet<>();
         HashMap<Integer, GitletCommit> res = getAnc(current, merged, set);
         if (!res.containsKey(0)) {
             GitletCommit commit = new GitletCommit(current, merged);
+            GitletCommit split = res.get(1);
+            HashSet<String> changed = new HashSet<>(set);
+            if (split != null) {
+                changed = new HashSet<>(split.changedFiles(current));
+                changed.addAll(split.changedFiles(merged));
+            }
             for (String file : set) {
+                if (!changed.contains(file)) {
+                    continue;
+                }
                 GitletBlob blob = current.getBlob(file);
                 GitletBlob given = merged.getBlob(file);
                 GitletBlob ancestor = (res.get(1) == null)
@@ -503,9 +596,8 @@ public class GitletCommandRunner {
                     if (exist(given)) {
                         commit.addBlob(file, given);
                         stage.stageAddedBlob(file, given);
-                        Utils.restrictedDelete(new File(file));
-                        Utils.writeContents(new File(file), Utils.
-                                readContentsAsString(given.getFile()));
+                        deleteWorkingFile(file);
+                        given.writeTo(new File(file));
                     } else {
                         rm(file);
                         stage.stageRemovedBlod(file);
@@ -519,7 +611,9 @@ public class GitletCommandRunner {
                         commit.addBlob(file, blob);
                     } else if (!isEmpty(set, merged) || (isEmpty(set, merged)
                             && merged.getParent().getBlob(file) != null)) {
-                        Utils.restrictedDelete(new File(file));
+                        deleteWorkingFile(file);
+                        new File(file).getAbsoluteFile().getParentFile()
+                                .mkdirs();
                         Utils.writeContents(new File(file), cont(blob, given));
                         conflict = true;
                         int vers = 1;
@@ -530,8 +624,6 @@ public class GitletCommandRunner {
                             vers = Math.max(vers, given.getVersion() + 1);
                         }
                         GitletBlob updateBlob = new GitletBlob(file, vers);
-                        File destFile = GitletStage.getStageFile(updateBlob);
-                        Utils.writeContents(destFile, cont(blob, given));
                         stage.stageAddedBlob(file, updateBlob);
                     }
                 }
@@ -564,7 +656,7 @@ public class GitletCommandRunner {
             System.out.println("Cannot merge a branch with itself.");
             return 0;
         }
-        List<String> fileList = Utils.plainFilenamesIn(".");
+        List<String> fileList = workingFiles();
         for (String f : fileList) {
             if (!currentCommit.getBlobMap().containsKey(f)) {
                 System.out.println("There is an untracked file in the way;"
@@ -585,22 +677,9 @@ public class GitletCommandRunner {
             GitletCommit currentCommit,
             GitletCommit merged,
             HashSet<String> set) {
-        GitletCommit ancestortor = null;
-        HashSet<GitletCommit> ancestortorSet = new HashSet<>();
-        GitletCommit curr = currentCommit;
+        GitletCommit ancestortor = GitletCommit.load(GitletGraph.mergeBase(
+                currentCommit.getHash(), merged.getHash()));
         HashMap<Integer, GitletCommit> result = new HashMap<>();
-        while (curr != null) {
-            ancestortorSet.add(curr);
-            curr = curr.getParent();
-        }
-        curr = merged;
-        while (curr != null) {
-            if (ancestortorSet.contains(curr)) {
-                ancestortor = curr;
-                break;
-            }
-            curr = curr.getParent();
-        }
         if (ancestortor != null && ancestortor.getHash().
                 equals(merged.getHash())) {
             System.out.println("Given branch is an ancestortor of "
@@ -613,7 +692,7 @@ public class GitletCommandRunner {
                 getHash())) {
             System.out.println("Current branch fast-forwarded.");
         }
-        HashMap<String, GitletBlob> currBlobMap = currentCommit.getBlobMap();
+        Map<String, GitletBlob> currBlobMap = currentCommit.getBlobMap();
         for (Map.Entry<String, GitletBlob> blob : currBlobMap.entrySet()) {
             set.add(blob.getKey());
         }
@@ -621,23 +700,6 @@ public class GitletCommandRunner {
                 entrySet()) {
             set.add(blob.getKey());
         }
-        curr = merged.getParent();
-        while (curr != null) {
-            if (currentCommit.getSendParent() != null) {
-                if (currentCommit.getSendParent().equals(curr)) {
-                    for (Map.Entry<String, GitletBlob> entry
-                            : currBlobMap.entrySet()) {
-                        String key = entry.getKey();
-                        if (curr.getBlobMap().keySet().contains(key)
-                                && !merged.getBlobMap().
-                                keySet().contains(key)) {
-                            rm(key);
-                        }
-                    }
-                }
-            }
-            curr = curr.getParent();
-        }
         result.put(1, ancestortor);
         return result;
     }
@@ -653,16 +715,14 @@ public class GitletCommandRunner {
             content = content + "\n=======";
         } else {
             content = content + "\n";
-            content = content + Utils.
-                    readContentsAsString(blob.getFile());
+            content = content + blob.readContentsAsString();
             content = content + "=======";
         }
         if (!exist(givenBlob)) {
             content = content + "\n>>>>>>>\n";
         } else {
             content = content + "\n";
-            content = content + Utils.
-                    readContentsAsString(givenBlob.getFile());
+            content = content + givenBlob.readContentsAsString();
             content = content + ">>>>>>>\n";
         }
         return content;
@@ -709,8 +769,6 @@ public class GitletCommandRunner {
             System.out.println("Encountered a merge conflict.");
         }
         GitletData.saveGitletData(gitletData);
-        gitletCommit.setSendParent(gitletData.getBranchMap().get(branchName));
-        GitletData.saveGitletData(gitletData);
     }
 
     /** Check whether the current blob is modified.
@@ -736,6 +794,24 @@ public class GitletCommandRunner {
         return blob != null;
     }
 
+    /** Write the contents of BLOB to its working file, unless INDEX shows
+     * that the file already holds them, and record the file in INDEX.
+     * @param blob the version of the file to check out.
+     * @param index the working-tree index.
+     */
+    private static void checkoutBlob(GitletBlob blob, GitletIndex index) {
+        String filename = blob.getFilename();
+        if (blob.getHash().equals(index.cached(filename))) {
+            return;
+        }
+        File workFile = new File(filename);
+        if (workFile.exists()) {
+            deleteWorkingFile(filename);
+        }
+        blob.writeTo(workFile);
+        index.record(filename, blob.getHash());
+    }
+
     /** The checkoutBranch command.
      * @param branchName the name of the current branch.
      * @return exit code.
@@ -753,8 +829,8 @@ public class GitletCommandRunner {
         }
 
         GitletCommit currentCommit = gitletData.getCurrentCommit();
-        GitletCommit destCommit = gitletData.getBranchMap().get(branchName);
-        List<String> filenameList = Utils.plainFilenamesIn(".");
+        GitletCommit destCommit = gitletData.getBranchCommit(branchName);
+        List<String> filenameList = workingFiles();
         for (String filename : filenameList) {
             if (!currentCommit.getBlobMap().containsKey(filename)
                     && destCommit.getBlobMap().containsKey(filename)) {
@@ -764,25 +840,18 @@ public class GitletCommandRunner {
             }
         }
 
-        for (Entry<String, GitletBlob> entry : destCommit.getBlobMap().
-                entrySet()) {
-            GitletBlob blob = entry.getValue();
-            File workFile = new File(blob.getFilename());
-            boolean exists = workFile.exists();
-            if (exists) {
-                Utils.restrictedDelete(workFile);
-            }
-
-            File gitFile = blob.getFile();
-            Utils.writeContents(workFile, Utils.readContentsAsString(gitFile));
-        }
-
         for (String filename : filenameList) {
             if (!destCommit.getBlobMap().containsKey(filename)
                     && currentCommit.getBlobMap().containsKey(filename)) {
-                Utils.restrictedDelete(filename);
+                deleteWorkingFile(filename);
             }
         }
+        GitletIndex index = GitletIndex.load();
+        for (Entry<String, GitletBlob> entry : destCommit.getBlobMap().
+                entrySet()) {
+            checkoutBlob(entry.getValue(), index);
+        }
+        index.save();
 
         gitletData.setCurrentBranch(branchName);
         GitletData.saveGitletData(gitletData);
@@ -803,14 +872,9 @@ public class GitletCommandRunner {
             return 0;
         }
 
-        File workFile = new File(fileName);
-        boolean exists = workFile.exists();
-        if (exists) {
-            Utils.restrictedDelete(workFile);
-        }
-
-        File gitFile = currentCommit.getBlobMap().get(fileName).getFile();
-        Utils.writeContents(workFile, Utils.readContentsAsString(gitFile));
+        GitletIndex index = GitletIndex.load();
+        checkoutBlob(currentCommit.getBlobMap().get(fileName), index);
+        index.save();
 
         GitletData.saveGitletData(gitletData);
         return 0;
@@ -824,10 +888,9 @@ public class GitletCommandRunner {
     public static int checkoutCommitFile(String commitId, String fileName) {
         GitletData gitletData = GitletData.loadGitletData();
         GitletCommit commit = null;
-        for (Entry<String, GitletCommit> entry : gitletData.
-                getCommitMap().entrySet()) {
-            if (entry.getKey().startsWith(commitId)) {
-                commit = entry.getValue();
+        for (String id : GitletCommit.commitIdsStartingWith(commitId)) {
+            if (id.startsWith(commitId)) {
+                commit = gitletData.getCommit(id);
             }
         }
 
@@ -841,19 +904,56 @@ public class GitletCommandRunner {
             return 0;
         }
 
-        File workFile = new File(fileName);
-        boolean exists = workFile.exists();
-        if (exists) {
-            Utils.restrictedDelete(workFile);
-        }
-
-        File gitFile = commit.getBlobMap().get(fileName).getFile();
-        Utils.writeContents(workFile, Utils.readContentsAsString(gitFile));
+        GitletIndex index = GitletIndex.load();
+        checkoutBlob(commit.getBlobMap().get(fileName), index);
+        index.save();
 
         GitletData.saveGitletData(gitletData);
         return 0;
     }
 
+    /** The MIGRATE command: convert a repository written by an older
+     * version.  Its blobs and commits are first copied into the object
+     * store, and commits kept in .gitlet/data by the first version are
+     * stored as objects and .gitlet/data rewritten (see GitletLegacy).
+     * Only then are the old files deleted, so a failure part way leaves
+     * the repository as it was.
+     * @return exit code.
+     */
+    public static int migrate() {
+        if (!new File(".gitlet").exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return 0;
+        }
+        List<File> old = GitletObjects.migrate();
+        int commits = GitletLegacy.migrate();
+        for (File file : old) {
+            file.delete();
+        }
+        new File(".gitlet/commits").delete();
+        System.out.println("Migrated " + old.size() + " objects and "
+                + commits + " commits.");
+        return 0;
+    }
+
+    /** The GC command: pack all objects into the pack, storing successive
+     * versions of each file as deltas, and write the commit graph.
+     * @return exit code.
+     */
+    public static int gc() {
+        if (!new File(".gitlet").exists()) {
+            System.out.println("Not in an initialized Gitlet directory.");
+            return 0;
+        }
+        int[] packed = GitletPack.repack();
+        System.out.println("Packed " + packed[0] + " objects, "
+                + packed[1] + " as deltas.");
+        int commits = GitletGraph.write();
+        System.out.println("Wrote a commit graph of " + commits
+                + " commits.");
+        return 0;
+    }
+
     /** Add a remote branch.
      * @param branchName the remote branch's name.
      * @param remoteDir the remote dir's name.
@@ -897,8 +997,7 @@ public class GitletCommandRunner {
         if (data.getBranchMap().containsKey(remoteBranch)) {
             String rcID = data.getBranchCommit(remoteBranch).getHash();
             while (!data.getAllCommitsID().contains(rcID)) {
-                GitletCommit rc = data.getCommitMap().get(rcID);
-                data.getAllCommitsID().add(rcID);
+                GitletCommit rc = data.getCommit(rcID);
                 File lc = new File(rcID);
                 if (!lc.exists()) {
                     lc.createNewFile();
@@ -925,7 +1024,9 @@ public class GitletCommandRunner {
         }
     }
 
-    /** To push a branch to the remote dic.
+    /** To push a branch to the remote dic.  The commits copied are those
+     * reachable from the current commit, through either parent of a
+     * merge, that the remote branch does not already have.
      * @param remoteName remote name
      * @param remoteBranch remote branch name
      */
@@ -940,18 +1041,18 @@ public class GitletCommandRunner {
         }
         GitletCommit commit = data.getCurrentCommit();
         String localID = commit.getHash();
-        GitletCommit local = commit.getParent();
-        ArrayList<String> allancestors = new ArrayList<>();
-        while (local != null) {
-            allancestors.add(local.getHash());
-            local = local.getParent();
-        }
-        String rcID = data.getBranchMap().get(remoteBranch).getHash();
-        if (allancestors.contains(rcID)) {
-            while (!rcID.equals(localID)) {
-                GitletCommit lcommit = data.getCommitMap().get(localID);
-                data.getAllCommitsID().add(localID);
-                File targetcommit = new File(localID);
+        String rcID = data.getBranchMap().get(remoteBranch);
+        if (!localID.equals(rcID) && GitletGraph.isAncestor(rcID, localID)) {
+            HashSet<String> seen = new HashSet<>();
+            ArrayDeque<String> work = new ArrayDeque<>();
+            work.push(localID);
+            while (!work.isEmpty()) {
+                String id = work.pop();
+                if (!seen.add(id) || GitletGraph.isAncestor(id, rcID)) {
+                    continue;
+                }
+                GitletCommit lcommit = data.getCommit(id);
+                File targetcommit = new File(id);
                 if (!targetcommit.exists()) {
                     targetcommit.createNewFile();
                 }
@@ -965,9 +1066,12 @@ public class GitletCommandRunner {
                             Utils.readContents(lBlob));
                 }
                 Utils.writeObject(targetcommit, lcommit);
-                localID = lcommit.getParent().getHash();
+                for (String parent : lcommit.getParentIds()) {
+                    work.push(parent);
+                }
             }
-            data.getBranchMap().put(remoteBranch, data.getCurrentCommit());
+            data.getBranchMap().put(remoteBranch,
+                    data.getCurrentCommit().getHash());
             GitletData.saveGitletData(data);
         } else {
             System.out.println("Please pull down remote "
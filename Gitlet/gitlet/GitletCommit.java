@@ -1,39 +1,67 @@
 package gitlet;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 
-/** GitletCommit class.
+/** GitletCommit class.  Each finished commit is stored as its own object
+ * (see GitletObjects), and refers to its parents by their hashes, so a
+ * command reads only the commits it actually uses (see load).  Its files
+ * are not stored in it but in its tree (see GitletTree), which shares
+ * every unchanged directory with its parent's; a new commit records only
+ * the files added or removed, and finish stores new trees for just the
+ * directories holding them.
  * @author Qianfei(Ben) Hu
  * */
 public class GitletCommit implements Serializable {
+    /** Kept fixed as this class changes, so that commits stored as objects
+     *  remain readable.  Commits of the first version of Gitlet, kept in
+     *  .gitlet/data, have another version and are read by GitletLegacy. */
+    private static final long serialVersionUID = 1336026020044643626L;
+
     /** The date saved in the commit message. */
     private Date date = null;
     /** The hashcode of the commit. */
     private String hash;
-    /** The parent of the current commit. */
-    private GitletCommit parent = null;
-    /** The send Parent of the current commit. */
-    private GitletCommit sendParent = null;
+    /** The hash of the parent of the current commit. */
+    private String parent = null;
+    /** The hash of the send Parent of the current commit. */
+    private String sendParent = null;
     /** The message to be committed. */
     private String message;
-    /** A hash map to save the blobs. */
-    private HashMap<String, GitletBlob> blobMap
-            = new HashMap<String, GitletBlob>();
+    /** The files of a commit made before they were kept in trees, by
+     *  path, and otherwise null. */
+    private HashMap<String, GitletBlob> blobMap;
+    /** The hash of the tree of the working directory (see GitletTree),
+     *  or null in a commit made before trees were stored. */
+    private String tree;
+    /** The files added (with their blobs) or removed (with null) since
+     *  the parent, until the commit is finished. */
+    private transient HashMap<String, GitletBlob> changes
+            = new HashMap<>();
+    /** The files of the commit, by path, once asked for. */
+    private transient HashMap<String, GitletBlob> files;
 
-    /** Constructor of GitletCommit.
+    /** Constructor of GitletCommit.  The new commit has the files of its
+     *  parent.
      *  @param p the parent of the commit.
      *  */
     public GitletCommit(GitletCommit p) {
         this.setParent(p);
+        this.tree = (p == null) ? null : p.getTree();
     }
     /** Overload Constructor of GitletCommit.
      * * @param p the parent of the current commit.
      * * @param send the send parent of the current commit.
      * */
     public GitletCommit(GitletCommit p, GitletCommit send) {
-        this.setParent(p);
+        this(p);
         this.setSendParent(send);
     }
 
@@ -47,15 +75,32 @@ public class GitletCommit implements Serializable {
         return message;
     }
 
-    /** Return the hashmap of blobs of the commit. */
-    public HashMap<String, GitletBlob> getBlobMap() {
-        return this.blobMap;
+    /** Return the blobs of the commit, by path.  The map is read from the
+     * commit's trees the first time it is asked for, and should not be
+     * modified. */
+    public Map<String, GitletBlob> getBlobMap() {
+        if (files == null) {
+            files = (blobMap != null) ? new HashMap<>(blobMap)
+                    : GitletTree.files(tree);
+            for (Map.Entry<String, GitletBlob> change : changes.entrySet()) {
+                putFile(files, change.getKey(), change.getValue());
+            }
+        }
+        return files;
     }
-    /** Return GitletBlob from file named fileName.
+    /** Return GitletBlob from file named fileName.  Only the trees of the
+     * directories holding the file are read.
      * * @param fileName the file name of the blob.
      * */
     public GitletBlob getBlob(String fileName) {
-        return blobMap.get(fileName);
+        if (files != null) {
+            return files.get(fileName);
+        } else if (changes.containsKey(fileName)) {
+            return changes.get(fileName);
+        } else if (blobMap != null) {
+            return blobMap.get(fileName);
+        }
+        return GitletTree.get(tree, fileName);
     }
 
     /** Put the file named fileName and holding content of blob
@@ -64,35 +109,107 @@ public class GitletCommit implements Serializable {
      * @param fileName the file name of this blob.
      * */
     public void addBlob(String fileName, GitletBlob blob) {
-        blobMap.put(fileName, blob);
+        changes.put(fileName, blob);
+        if (files != null) {
+            putFile(files, fileName, blob);
+        }
     }
 
     /** Remove the blob named fileName from the Blob map.
      * @param fileName the file name of the blob to be removed from this commit.
      * */
     public void removeBlob(String fileName) {
-        blobMap.remove(fileName);
+        addBlob(fileName, null);
     }
 
-    /** Finish the commit with the String of message.
+    /** Finish the commit with the String of message.  Only the trees of
+     * the directories whose files changed since the parent are stored.
      * @param m the message of this commit.
      * */
     public void finish(String m) {
         message = m;
         this.date = new Date();
-        this.hash = Utils.sha1(Utils.serialize(this));
+        this.tree = GitletTree.update(getTree(), changes);
+        this.changes = new HashMap<>();
+        this.hash = Utils.sha1("commit\n", encode());
+    }
+
+    /** Return a finished commit, not yet saved, whose parents have the
+     * hashes PARENT and SEND, made at DATE with message M and holding
+     * FILES.  Used to convert commits written by the first version of
+     * Gitlet (see GitletLegacy).
+     * @param parent the hash of the first parent, or null.
+     * @param send the hash of the second parent, or null.
+     * @param date the time of the commit.
+     * @param m the message of the commit.
+     * @param files the files of the commit, by path.
+     * @return the commit.
+     * */
+    static GitletCommit restore(String parent, String send, Date date,
+                                String m, Map<String, GitletBlob> files) {
+        GitletCommit result = new GitletCommit(null);
+        result.parent = parent;
+        result.sendParent = send;
+        result.date = date;
+        result.message = m;
+        result.tree = GitletTree.write(files);
+        result.hash = Utils.sha1("commit\n", result.encode());
+        return result;
+    }
+
+    /** Return the canonical encoding of this commit, from which its hash
+     * is computed: the hash of its tree, the hashes of its parents, its
+     * time and its message.  Unlike the serialized form, its size does
+     * not depend on the rest of the history.
+     * @return the encoding.
+     * */
+    public String encode() {
+        StringBuilder result = new StringBuilder();
+        result.append("tree ").append(getTree()).append('\n');
+        if (parent != null) {
+            result.append("parent ").append(parent).append('\n');
+        }
+        if (sendParent != null) {
+            result.append("parent ").append(sendParent).append('\n');
+        }
+        result.append("date ").append(date.getTime()).append('\n');
+        result.append('\n').append(message);
+        return result.toString();
+    }
+
+    /** Return the hash of the tree of the files of this commit.  The
+     * tree of a commit made before trees were stored is stored when
+     * first asked for. */
+    public String getTree() {
+        if (tree == null && blobMap != null) {
+            tree = GitletTree.write(blobMap);
+        }
+        return tree;
+    }
+
+    /** Return the paths of the files that differ between this commit and
+     * OTHER, in order.  Directories that are the same in both are
+     * skipped.
+     * @param other another commit, or null for one with no files.
+     * @return the paths.
+     * */
+    public List<String> changedFiles(GitletCommit other) {
+        TreeSet<String> result = new TreeSet<>();
+        GitletTree.diff(getTree(), other == null ? null : other.getTree(),
+                result);
+        return new ArrayList<>(result);
     }
 
     /** Return the parent of the current commit. */
     public GitletCommit getParent() {
-        return parent;
+        return load(parent);
     }
 
     /** Send the parent to the current commit.
      * @param p the parent commit of this commit.
      * */
     public void setParent(GitletCommit p) {
-        parent = p;
+        parent = (p == null) ? null : p.getHash();
     }
 
     /** Return the date. */
@@ -100,15 +217,96 @@ public class GitletCommit implements Serializable {
         return date;
     }
 
+    /** Return the hashes of the parents of this commit, the first parent
+     *  first, without reading them. */
+    public String[] getParentIds() {
+        if (parent == null) {
+            return new String[0];
+        } else if (sendParent == null) {
+            return new String[] {parent};
+        }
+        return new String[] {parent, sendParent};
+    }
+
     /** Return the sendParent. */
     public GitletCommit getSendParent() {
-        return sendParent;
+        return load(sendParent);
     }
 
     /** Set sendParent as the sendParent of the curr commit.
      * @param send the sendParent of this commit.
      * */
     public void setSendParent(GitletCommit send) {
-        sendParent = send;
+        sendParent = (send == null) ? null : send.getHash();
+    }
+
+    /** Return the commit whose hash is HASH, reading it from its file
+     * the first time it is asked for.  Later requests return the same
+     * object, so commits may be compared with ==.
+     * @param hash the hash of the commit, or null.
+     * @return the commit, or null if HASH is null or names no commit.
+     * */
+    public static GitletCommit load(String hash) {
+        if (hash == null) {
+            return null;
+        }
+        GitletCommit commit = LOADED.get(hash);
+        if (commit == null) {
+            if (!GitletObjects.COMMIT.equals(GitletObjects.type(hash))) {
+                return null;
+            }
+            commit = Utils.deserialize(
+                    GitletObjects.read(hash, GitletObjects.COMMIT),
+                    GitletCommit.class);
+            LOADED.put(hash, commit);
+        }
+        return commit;
+    }
+
+    /** Store this finished commit, unless it is already stored. */
+    public void save() {
+        LOADED.put(hash, this);
+        GitletObjects.write(hash, GitletObjects.COMMIT,
+                Utils.serialize(this));
+    }
+
+    /** Return the hashes of all commits in the repository. */
+    public static List<String> allCommitIds() {
+        return GitletObjects.list(GitletObjects.COMMIT, "");
+    }
+
+    /** Return the hashes of the commits whose hashes start with PREFIX.
+     * @param prefix an abbreviated commit id.
+     * */
+    public static List<String> commitIdsStartingWith(String prefix) {
+        return GitletObjects.list(GitletObjects.COMMIT, prefix);
+    }
+
+    /** Set the blob of the file PATH in FILES to BLOB, or remove the file
+     * if BLOB is null.
+     * @param files blobs, by path.
+     * @param path the path of a file.
+     * @param blob its blob, or null.
+     * */
+    private static void putFile(Map<String, GitletBlob> files, String path,
+                                GitletBlob blob) {
+        if (blob == null) {
+            files.remove(path);
+        } else {
+            files.put(path, blob);
+        }
     }
+
+    /** Restore the transient state of a commit read from its object.
+     * @param in the stream it is read from.
+     * */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        changes = new HashMap<>();
+    }
+
+    /** Commits read or saved by this command, by hash. */
+    private static final HashMap<String, GitletCommit> LOADED
+            = new HashMap<>();
 }
@@ -2,30 +2,32 @@ package gitlet;
 
 import java.io.File;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
-/** GitletData class.
+/** GitletData class.  Holds the branches, the current branch and the
+ * remotes.  Commits are stored separately (see GitletCommit.load), and
+ * branches refer to them by hash, so loading and saving this data does
+ * not depend on the length of the history.
  * @author Qianfei(Ben) Hu
  * */
 public class GitletData implements Serializable {
-    /** Saving the commits. */
-    private HashMap<String, GitletCommit> commitMap;
-    /** Saving the branches. */
-    private HashMap<String, GitletCommit> branchfMap;
+    /** Serialization version of .gitlet/data since commits became objects.
+     *  It differs from that of the first version of Gitlet, whose data
+     *  loadGitletData refuses until migrate converts it. */
+    private static final long serialVersionUID = 7260588370451122893L;
+
+    /** Saving the branches: the hash of the head commit of each. */
+    private HashMap<String, String> branchfMap;
     /** Saving the current branch. */
     private String currentBranch = "master";
     /** Remote branch and directory. */
     private HashMap<String, String> remoteMap;
-    /** All commits ID. */
-    private ArrayList<String> commitsID;
 
     /** Constructor of GitletData. */
     public GitletData() {
-        commitMap = new HashMap<>();
         branchfMap = new HashMap<>();
         remoteMap = new HashMap<>();
-        commitsID = new ArrayList<>();
     }
 
     /** Return remote map. */
@@ -34,17 +36,25 @@ public class GitletData implements Serializable {
     }
 
     /** Return all commits ID. */
-    public ArrayList<String> getAllCommitsID() {
-        return commitsID;
+    public List<String> getAllCommitsID() {
+        return GitletCommit.allCommitIds();
     }
 
-    /** Return the data of the gitlet. */
+    /** Return the data of the gitlet.  Throws a GitletException if the
+     *  repository was made by the first version of Gitlet. */
     public static GitletData loadGitletData() {
         File gitletDataFile = new File(".gitlet/data");
         if (gitletDataFile.exists()) {
-            GitletData gitletData
-                    = Utils.readObject(gitletDataFile, GitletData.class);
-            return gitletData;
+            try {
+                return Utils.readObject(gitletDataFile, GitletData.class);
+            } catch (IllegalArgumentException excp) {
+                if (GitletLegacy.isLegacy()) {
+                    throw Utils.error("This repository was made by an older "
+                            + "version of Gitlet; run migrate to convert "
+                            + "it.");
+                }
+                throw excp;
+            }
         } else {
             GitletData gitletData = new GitletData();
             return gitletData;
@@ -69,8 +79,9 @@ public class GitletData implements Serializable {
         currentBranch = curr;
     }
 
-    /** Return the hash map of the branches. */
-    HashMap<String, GitletCommit> getBranchMap() {
+    /** Return the hash map from branch names to the hashes of their
+     *  head commits. */
+    HashMap<String, String> getBranchMap() {
         return this.branchfMap;
     }
 
@@ -83,51 +94,48 @@ public class GitletData implements Serializable {
     /** Remove the branch named branchName.
      * @param branchName the name of branch to be removed. */
     public void removeBranch(String branchName) {
-        this.commitsID.remove(branchfMap.get(branchName).getHash());
         this.branchfMap.remove(branchName);
     }
 
     /** Add the commit named gitletCommit into the current Gitlet.
      * @param gitletCommit the commit to be added. */
     public void addGitletCommit(GitletCommit gitletCommit) {
-        commitMap.put(gitletCommit.getHash(), gitletCommit);
-        branchfMap.remove(currentBranch);
-        branchfMap.put(currentBranch, gitletCommit);
-        commitsID.add(gitletCommit.getHash());
+        gitletCommit.save();
+        branchfMap.put(currentBranch, gitletCommit.getHash());
     }
 
     /** Return the current commit. */
     public GitletCommit getCurrentCommit() {
-        return branchfMap.get(currentBranch);
+        return GitletCommit.load(branchfMap.get(currentBranch));
     }
 
     /** Return the commit from the branch named branchName.
      * @param branchName the name of the branch to be returned. */
     public GitletCommit getBranchCommit(String branchName) {
-        return branchfMap.get(branchName);
+        return GitletCommit.load(branchfMap.get(branchName));
     }
 
     /** Set the current commit from gitletCommit.
      * @param gitletCommit the commit to be set. */
     public void setCurrentCommit(GitletCommit gitletCommit) {
-        commitMap.put(gitletCommit.getHash(), gitletCommit);
-        branchfMap.remove(currentBranch);
-        branchfMap.put(currentBranch, gitletCommit);
-        commitsID.add(gitletCommit.getHash());
+        addGitletCommit(gitletCommit);
     }
 
-    /** Return the hashMap of commits. */
-    public HashMap<String, GitletCommit> getCommitMap() {
-        return this.commitMap;
+    /** Return the commit whose hash is commitId, or null if there is
+     *  none.
+     * @param commitId the hash of the commit. */
+    public GitletCommit getCommit(String commitId) {
+        return GitletCommit.load(commitId);
     }
 
     /** Return the Gitlet blob from the file named fileName.
      * @param fileName the name of the file to be returned. */
     public GitletBlob getBlob(String fileName) {
-        if (branchfMap.get(currentBranch) == null) {
+        GitletCommit current = getCurrentCommit();
+        if (current == null) {
             return null;
         }
-        return branchfMap.get(currentBranch).getBlob(fileName);
+        return current.getBlob(fileName);
     }
 
 }
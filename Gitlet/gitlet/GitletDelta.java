@@ -0,0 +1,179 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+/** Delta encoding of one version of a file against another, used to store
+ * successive versions compactly in a pack (see GitletPack).  A delta is
+ * the length of the base and of the result, followed by instructions,
+ * each either COPY (an offset and a length: copy that part of the base)
+ * or INSERT (a length and that many bytes: copy them).  Numbers are
+ * written as varints: seven bits per byte, low bits first, with the top
+ * bit set on all but the last byte.
+ * @author Qianfei(Ben) Hu
+ */
+public class GitletDelta {
+
+    /** Return a delta that turns BASE into TARGET.  Matches are found by
+     * indexing the BLOCK-byte blocks of BASE and looking up each position
+     * of TARGET, extending each match as far as it goes both ways.
+     * @param base the earlier version.
+     * @param target the later version.
+     * @return the delta.
+     * */
+    public static byte[] encode(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeNumber(out, base.length);
+        writeNumber(out, target.length);
+
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(blockHash(base, i), i);
+        }
+
+        int pending = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer at = blocks.get(blockHash(target, i));
+            if (at == null || !same(base, at, target, i, BLOCK)) {
+                i += 1;
+                continue;
+            }
+            int start = at, tstart = i;
+            while (tstart > pending && start > 0
+                    && base[start - 1] == target[tstart - 1]) {
+                start -= 1;
+                tstart -= 1;
+            }
+            int end = at + BLOCK, tend = i + BLOCK;
+            while (end < base.length && tend < target.length
+                    && base[end] == target[tend]) {
+                end += 1;
+                tend += 1;
+            }
+            insert(out, target, pending, tstart);
+            out.write(COPY);
+            writeNumber(out, start);
+            writeNumber(out, end - start);
+            i = pending = tend;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE.
+     * @param base the version DELTA was encoded against.
+     * @param delta a delta from encode.
+     * @return the later version.
+     * */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        ByteArrayInputStream in = new ByteArrayInputStream(delta);
+        if (readNumber(in) != base.length) {
+            throw Utils.error("delta does not match its base");
+        }
+        byte[] result = new byte[readNumber(in)];
+        int n = 0;
+        int op;
+        while ((op = in.read()) >= 0) {
+            if (op == COPY) {
+                int offset = readNumber(in), length = readNumber(in);
+                System.arraycopy(base, offset, result, n, length);
+                n += length;
+            } else if (op == INSERT) {
+                int length = readNumber(in);
+                if (in.read(result, n, length) != length) {
+                    throw Utils.error("truncated delta");
+                }
+                n += length;
+            } else {
+                throw Utils.error("bad delta");
+            }
+        }
+        if (n != result.length) {
+            throw Utils.error("truncated delta");
+        }
+        return result;
+    }
+
+    /** Write an INSERT of TARGET[FROM .. TO - 1] to OUT, if it is not
+     * empty.
+     * @param out the delta being written.
+     * @param target the later version.
+     * @param from the start of the bytes to insert.
+     * @param to the end of the bytes to insert.
+     * */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeNumber(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Return a hash of the BLOCK bytes of DATA starting at START.
+     * @param data the bytes.
+     * @param start the start of the block.
+     * */
+    private static int blockHash(byte[] data, int start) {
+        int h = 0;
+        for (int k = start; k < start + BLOCK; k += 1) {
+            h = 31 * h + data[k];
+        }
+        return h;
+    }
+
+    /** Return true iff the LENGTH bytes of A at I equal those of B at J.
+     * @param a the first array.
+     * @param i the start in A.
+     * @param b the second array.
+     * @param j the start in B.
+     * @param length the number of bytes compared.
+     * */
+    private static boolean same(byte[] a, int i, byte[] b, int j,
+                                int length) {
+        for (int k = 0; k < length; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write the non-negative number N to OUT as a varint.
+     * @param out the stream.
+     * @param n the number.
+     * */
+    private static void writeNumber(ByteArrayOutputStream out, int n) {
+        while (n >= 0x80) {
+            out.write((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        out.write(n);
+    }
+
+    /** Read a varint from IN.
+     * @param in the stream.
+     * @return the number.
+     * */
+    private static int readNumber(ByteArrayInputStream in) {
+        int n = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = in.read();
+            if (b < 0 || shift > 28) {
+                throw Utils.error("bad delta");
+            }
+            n |= (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return n;
+            }
+        }
+    }
+
+    /** Size of the blocks of the base that are indexed. */
+    private static final int BLOCK = 16;
+
+    /** Instruction codes. */
+    private static final int COPY = 1, INSERT = 2;
+}
@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/** Tests of GitletDelta.
+ *  @author Qianfei(Ben) Hu
+ */
+public class GitletDeltaTest {
+
+    /** Return the bytes of S.
+     * @param s a string.
+     * */
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Check that the delta from BASE to TARGET rebuilds TARGET.
+     * @param base the base.
+     * @param target the target.
+     * */
+    private static void checkRoundTrip(byte[] base, byte[] target) {
+        byte[] delta = GitletDelta.encode(base, target);
+        assertArrayEquals(target, GitletDelta.apply(base, delta));
+    }
+
+    @Test
+    public void testEmpty() {
+        byte[] empty = new byte[0];
+        checkRoundTrip(empty, empty);
+        checkRoundTrip(empty, bytes("wug"));
+        checkRoundTrip(bytes("This is a wug."), empty);
+    }
+
+    @Test
+    public void testShorterThanBlock() {
+        checkRoundTrip(bytes("short"), bytes("shorter"));
+        checkRoundTrip(bytes("a"), bytes("a"));
+        checkRoundTrip(bytes("x"), bytes("This is not a wug, it is longer."));
+        checkRoundTrip(bytes("This is not a wug, it is longer."), bytes("x"));
+    }
+
+    @Test
+    public void testBinary() {
+        Random random = new Random(61);
+        byte[] base = new byte[5000];
+        random.nextBytes(base);
+        byte[] target = Arrays.copyOf(base, base.length + 7);
+        for (int i = 0; i < 20; i += 1) {
+            target[random.nextInt(target.length)] = (byte) random.nextInt();
+        }
+        checkRoundTrip(base, target);
+        checkRoundTrip(target, base);
+
+        byte[] zeros = new byte[300];
+        byte[] ends = zeros.clone();
+        ends[0] = (byte) 0xff;
+        ends[ends.length - 1] = (byte) 0x80;
+        checkRoundTrip(zeros, ends);
+    }
+
+    @Test
+    public void testPureInsert() {
+        String line = "line of a file that is longer than one block\n";
+        String base = line.repeat(10);
+        String target = line.repeat(5) + "an inserted line\n"
+                + line.repeat(5);
+        byte[] delta = GitletDelta.encode(bytes(base), bytes(target));
+        assertArrayEquals(bytes(target),
+                GitletDelta.apply(bytes(base), delta));
+        assertTrue("delta should copy the unchanged lines",
+                delta.length < target.length() / 2);
+        checkRoundTrip(bytes(base), bytes(base + "appended"));
+        checkRoundTrip(bytes(base), bytes("prepended" + base));
+    }
+
+    @Test(expected = GitletException.class)
+    public void testWrongBase() {
+        byte[] delta = GitletDelta.encode(bytes("This is a wug."),
+                bytes("This is not a wug."));
+        GitletDelta.apply(bytes("another base"), delta);
+    }
+}
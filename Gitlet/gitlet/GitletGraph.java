@@ -0,0 +1,388 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** The ancestry of the commits of a repository.  Each commit has a
+ * generation number: 1 for a commit with no parents, and otherwise one
+ * more than the largest generation of its parents.  So a commit can only
+ * be an ancestor of commits of larger generation, which lets ancestry
+ * searches stop early.
+ *
+ * gc writes the parents, generation and time of every commit to
+ * .gitlet/commit-graph, which is mapped into memory, so those searches
+ * read no commit objects.  Its format is a header (MAGIC, VERSION, the
+ * number of commits), a fanout table of 256 counts as in a pack index
+ * (see GitletPack), the hashes of the commits in order, as 20 bytes
+ * each, and then, for each commit in the same order, a RECORD: the
+ * positions in the file of its two parents (-1 for none), its generation
+ * and its time.  Commits made since the file was written are read from
+ * their objects instead.
+ * @author Qianfei(Ben) Hu
+ */
+public class GitletGraph {
+
+    /** Return the hash of the best common ancestor of the commits whose
+     * hashes are A and B, following both parents of merges, or null if
+     * they have none.  Of several common ancestors none of which is an
+     * ancestor of another (as after criss-cross merges), the one of
+     * largest generation, and then latest time, is chosen.
+     * @param a the hash of a commit.
+     * @param b the hash of another commit.
+     * @return the hash of their merge base, or null.
+     * */
+    public static String mergeBase(String a, String b) {
+        HashMap<String, Integer> flags = new HashMap<>();
+        PriorityQueue<String> queue = new PriorityQueue<>(NEWEST_FIRST);
+        flags.put(a, FROM_A);
+        flags.merge(b, FROM_B, (x, y) -> x | y);
+        queue.add(a);
+        if (!b.equals(a)) {
+            queue.add(b);
+        }
+        List<String> bases = new ArrayList<>();
+        while (!allStale(queue, flags)) {
+            String commit = queue.poll();
+            int flag = flags.get(commit);
+            if ((flag & BOTH) == BOTH && (flag & STALE) == 0) {
+                bases.add(commit);
+                flag |= STALE;
+                flags.put(commit, flag);
+            }
+            for (String parent : node(commit).parents) {
+                int old = flags.getOrDefault(parent, 0);
+                if ((old | flag) != old) {
+                    flags.put(parent, old | flag);
+                    queue.remove(parent);
+                    queue.add(parent);
+                }
+            }
+        }
+        bases.sort(NEWEST_FIRST);
+        for (String base : bases) {
+            boolean redundant = false;
+            for (String other : bases) {
+                if (other != base && isAncestor(base, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                return base;
+            }
+        }
+        return null;
+    }
+
+    /** Return true iff the commit whose hash is A is the commit whose hash
+     * is B or one of its ancestors.  Commits whose generations are no
+     * larger than A's are not searched past.
+     * @param a the hash of a commit, or null.
+     * @param b the hash of another commit.
+     * @return true iff A is B or an ancestor of it.
+     * */
+    public static boolean isAncestor(String a, String b) {
+        if (a == null || GitletCommit.load(a) == null) {
+            return false;
+        }
+        int generation = node(a).generation;
+        HashSet<String> seen = new HashSet<>();
+        ArrayDeque<String> work = new ArrayDeque<>();
+        work.push(b);
+        while (!work.isEmpty()) {
+            String commit = work.pop();
+            if (commit.equals(a)) {
+                return true;
+            }
+            if (!seen.add(commit)
+                    || node(commit).generation <= generation) {
+                continue;
+            }
+            for (String parent : node(commit).parents) {
+                work.push(parent);
+            }
+        }
+        return false;
+    }
+
+    /** Write the commit-graph file for all commits of the repository.
+     * @return the number of commits in it.
+     * */
+    public static int write() {
+        List<String> hashes = GitletCommit.allCommitIds();
+        Collections.sort(hashes);
+        HashMap<String, Integer> positions = new HashMap<>();
+        int[] fanout = new int[FANOUT];
+        for (String hash : hashes) {
+            positions.put(hash, positions.size());
+            fanout[Integer.parseInt(hash.substring(0, 2), 16)] += 1;
+        }
+        for (int k = 1; k < FANOUT; k += 1) {
+            fanout[k] += fanout[k - 1];
+        }
+
+        File temp;
+        try {
+            temp = File.createTempFile("tmp-", ".graph", GRAPH_FILE
+                    .getParentFile());
+        } catch (IOException excp) {
+            throw Utils.error("cannot write the commit graph");
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(hashes.size());
+            for (int n : fanout) {
+                out.writeInt(n);
+            }
+            for (String hash : hashes) {
+                for (int i = 0; i < HASH_BYTES; i += 1) {
+                    out.writeByte(Integer.parseInt(
+                            hash.substring(2 * i, 2 * i + 2), 16));
+                }
+            }
+            for (String hash : hashes) {
+                Node node = node(hash);
+                for (int i = 0; i < 2; i += 1) {
+                    out.writeInt(i < node.parents.length
+                            ? positions.getOrDefault(node.parents[i], -1)
+                            : -1);
+                }
+                out.writeInt(node.generation);
+                out.writeLong(node.time);
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw Utils.error("cannot write the commit graph");
+        }
+        try {
+            Files.move(temp.toPath(), GRAPH_FILE.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            temp.delete();
+            throw Utils.error("cannot write the commit graph");
+        }
+        graph = null;
+        return hashes.size();
+    }
+
+    /** The parents, generation and time of a commit. */
+    private static class Node {
+        /** A node.
+         * @param parents the hashes of the parents.
+         * @param generation the generation number.
+         * @param time the time of the commit.
+         * */
+        Node(String[] parents, int generation, long time) {
+            this.parents = parents;
+            this.generation = generation;
+            this.time = time;
+        }
+
+        /** The hashes of the parents. */
+        private final String[] parents;
+        /** The generation number. */
+        private final int generation;
+        /** The time of the commit, in milliseconds. */
+        private final long time;
+    }
+
+    /** Return the node of the commit whose hash is HASH, from the
+     * commit-graph file if it is there, and otherwise from the commit and
+     * the nodes of its ancestors, found without recursion, as histories
+     * may be long.
+     * @param hash the hash of a commit.
+     * */
+    private static Node node(String hash) {
+        ArrayDeque<String> work = new ArrayDeque<>();
+        work.push(hash);
+        while (!work.isEmpty()) {
+            String commit = work.peek();
+            if (NODES.containsKey(commit)) {
+                work.pop();
+                continue;
+            }
+            Node node = readNode(commit);
+            if (node == null) {
+                GitletCommit c = GitletCommit.load(commit);
+                if (c == null) {
+                    throw Utils.error("no commit %s", commit);
+                }
+                String[] parents = c.getParentIds();
+                int generation = 1;
+                for (String parent : parents) {
+                    Node p = NODES.get(parent);
+                    if (p == null) {
+                        work.push(parent);
+                        generation = 0;
+                    } else if (generation > 0) {
+                        generation = Math.max(generation, p.generation + 1);
+                    }
+                }
+                if (generation == 0) {
+                    continue;
+                }
+                node = new Node(parents, generation, c.getDate().getTime());
+            }
+            NODES.put(commit, node);
+            work.pop();
+        }
+        return NODES.get(hash);
+    }
+
+    /** Return the node of the commit whose hash is HASH as recorded in the
+     * commit-graph file, or null if it is not there.
+     * @param hash the hash of a commit.
+     * */
+    private static Node readNode(String hash) {
+        int k = find(hash);
+        if (k < 0) {
+            return null;
+        }
+        int at = HEADER + 4 * FANOUT + HASH_BYTES * count + RECORD * k;
+        ArrayList<String> parents = new ArrayList<>();
+        for (int i = 0; i < 2; i += 1) {
+            int p = graph.getInt(at + 4 * i);
+            if (p >= 0) {
+                parents.add(hashAt(p));
+            }
+        }
+        return new Node(parents.toArray(new String[0]),
+                graph.getInt(at + 8), graph.getLong(at + 12));
+    }
+
+    /** Return the position of HASH in the commit-graph file, or -1 if it
+     * is not there.
+     * @param hash the hash of a commit.
+     * */
+    private static int find(String hash) {
+        if (!open()) {
+            return -1;
+        }
+        int first = Integer.parseInt(hash.substring(0, 2), 16);
+        int lo = first == 0 ? 0 : graph.getInt(HEADER + 4 * (first - 1));
+        int hi = graph.getInt(HEADER + 4 * first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = hashAt(mid).compareTo(hash);
+            if (c == 0) {
+                return mid;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the hash of the Kth commit of the commit-graph file.
+     * @param k a position.
+     * */
+    private static String hashAt(int k) {
+        StringBuilder result = new StringBuilder();
+        int at = HEADER + 4 * FANOUT + HASH_BYTES * k;
+        for (int i = 0; i < HASH_BYTES; i += 1) {
+            result.append(String.format("%02x", graph.get(at + i)));
+        }
+        return result.toString();
+    }
+
+    /** Map the commit-graph file into memory, if it exists and is not
+     * already mapped.
+     * @return true iff it exists.
+     * */
+    private static boolean open() {
+        if (graph != null) {
+            return true;
+        }
+        if (!GRAPH_FILE.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(GRAPH_FILE.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+                return false;
+            }
+            count = buf.getInt(8);
+            graph = buf;
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return true iff every commit in QUEUE is marked STALE in FLAGS.
+     * @param queue commits still to be visited.
+     * @param flags the marks of the commits.
+     * */
+    private static boolean allStale(PriorityQueue<String> queue,
+                                    HashMap<String, Integer> flags) {
+        for (String commit : queue) {
+            if ((flags.get(commit) & STALE) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Orders commits by decreasing generation, and then by decreasing
+     *  time and hash. */
+    private static final Comparator<String> NEWEST_FIRST =
+        (x, y) -> {
+            Node nx = node(x), ny = node(y);
+            if (nx.generation != ny.generation) {
+                return Integer.compare(ny.generation, nx.generation);
+            } else if (nx.time != ny.time) {
+                return Long.compare(ny.time, nx.time);
+            }
+            return y.compareTo(x);
+        };
+
+    /** Marks of commits reached from A, from B, and from a common
+     *  ancestor already found. */
+    private static final int FROM_A = 1, FROM_B = 2, BOTH = 3, STALE = 4;
+
+    /** Nodes found by this command, by hash. */
+    private static final HashMap<String, Node> NODES = new HashMap<>();
+
+    /** The magic number and version of the file format. */
+    private static final int MAGIC = 0x474c4347, VERSION = 1;
+    /** Length of the header. */
+    private static final int HEADER = 12;
+    /** Number of counts in the fanout table. */
+    private static final int FANOUT = 256;
+    /** Length of a hash as bytes. */
+    private static final int HASH_BYTES = 20;
+    /** Length of the record of a commit. */
+    private static final int RECORD = 4 + 4 + 4 + 8;
+
+    /** The commit-graph file. */
+    private static final File GRAPH_FILE = new File(".gitlet/commit-graph");
+
+    /** The commit-graph file, mapped into memory, or null if not yet
+     *  mapped. */
+    private static ByteBuffer graph;
+    /** The number of commits in it. */
+    private static int count;
+}
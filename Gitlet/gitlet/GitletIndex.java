@@ -0,0 +1,239 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/** GitletIndex class.  Remembers, for each working file that has been
+ * hashed, its size, modification time and inode (the stat data) and the
+ * hash of its contents, in .gitlet/index, so that a file whose stat data
+ * has not changed need not be read again.
+ *
+ * A file changed twice within the resolution of the file system's clock
+ * keeps its modification time, so an entry is trusted only if the file
+ * was last modified strictly before the index was written ("racy"
+ * entries are hashed again).  When saving, entries modified no earlier
+ * than the index file itself are dropped before the index is rewritten,
+ * as git does, so a later save cannot make a racy entry look safe.
+ * @author Qianfei(Ben) Hu
+ * */
+public class GitletIndex implements Serializable {
+    /** Serialization version of .gitlet/index. */
+    private static final long serialVersionUID = 4402675134807735710L;
+
+    /** The stat data and hash of one file. */
+    private static class Entry implements Serializable {
+        /** Serialization version of entries. */
+        private static final long serialVersionUID = -1586040236961911813L;
+
+        /** The stat data of the file. */
+        private long size, mtime;
+        /** The identity of the file (on Unix, its device and inode). */
+        private String inode;
+        /** The hash of its contents. */
+        private String hash;
+    }
+
+    /** Return the index of the current repository, or an empty one. */
+    public static GitletIndex load() {
+        GitletIndex index = null;
+        if (INDEX_FILE.exists()) {
+            try {
+                index = Utils.readObject(INDEX_FILE, GitletIndex.class);
+                index.written = modified(INDEX_FILE);
+            } catch (IllegalArgumentException excp) {
+                index = null;
+            }
+        }
+        if (index == null) {
+            index = new GitletIndex();
+        }
+        return index;
+    }
+
+    /** Save this index, if it has changed. */
+    public void save() {
+        if (!changed || !new File(".gitlet").isDirectory()) {
+            return;
+        }
+        Utils.writeObject(INDEX_FILE, this);
+        written = modified(INDEX_FILE);
+        boolean racy = false;
+        for (Iterator<Entry> i = entries.values().iterator(); i.hasNext();) {
+            if (i.next().mtime >= written) {
+                i.remove();
+                racy = true;
+            }
+        }
+        if (racy) {
+            Utils.writeObject(INDEX_FILE, this);
+        }
+        changed = false;
+    }
+
+    /** Return the hash of the contents of the working file PATH, reading
+     * it only if its stat data differ from those recorded.
+     * @param path the name of the file.
+     * @return the hash.
+     * */
+    public String hash(String path) {
+        return hashAll(List.of(path)).get(0);
+    }
+
+    /** Return the hashes of the contents of the working files PATHS, in
+     * the same order.  The files whose stat data differ from those
+     * recorded are read in parallel.
+     * @param paths the names of the files.
+     * @return their hashes.
+     * */
+    public List<String> hashAll(List<String> paths) {
+        return update(paths, false);
+    }
+
+    /** Store the contents of the working files PATHS as blobs, unless
+     * they are already stored, and return their hashes, in the same
+     * order.  The files are read, hashed, compressed and written in
+     * parallel.
+     * @param paths the names of the files.
+     * @return their hashes.
+     * */
+    public List<String> storeAll(List<String> paths) {
+        return update(paths, true);
+    }
+
+    /** Return the recorded hash of the working file PATH if its stat data
+     * are unchanged and the entry is not racy, and otherwise null.
+     * @param path the name of the file.
+     * */
+    public String cached(String path) {
+        Entry now = lookup(path);
+        return now == null ? null : now.hash;
+    }
+
+    /** Record that the contents of the working file PATH, as it now is,
+     * have hash HASH.
+     * @param path the name of the file.
+     * @param hash the hash of its contents.
+     * */
+    public void record(String path, String hash) {
+        Entry entry = stat(new File(path));
+        if (entry == null) {
+            forget(path);
+        } else {
+            entry.hash = hash;
+            entries.put(path, entry);
+            changed = true;
+        }
+    }
+
+    /** Forget the working file PATH.
+     * @param path the name of the file.
+     * */
+    public void forget(String path) {
+        changed |= entries.remove(path) != null;
+    }
+
+    /** Return the hashes of the working files PATHS, reading those whose
+     * entries are missing or stale on the common fork-join pool, and
+     * storing them as blobs as well if STORE.  Each file's stat data are
+     * taken before it is read, so a file changed while being read will
+     * not match its new entry.  The entries are updated afterwards, by
+     * this thread alone.
+     * @param paths the names of the files.
+     * @param store true iff the files are to be stored.
+     * @return their hashes, in order.
+     * */
+    private List<String> update(List<String> paths, boolean store) {
+        String[] hashes = new String[paths.size()];
+        Entry[] fresh = new Entry[paths.size()];
+        IntStream.range(0, hashes.length).parallel().forEach(i -> {
+            Entry entry = lookup(paths.get(i));
+            String hash = entry == null ? null : entry.hash;
+            if (hash == null || store && !GitletObjects.contains(hash)) {
+                File file = new File(paths.get(i));
+                hash = store
+                        ? GitletObjects.writeFile(file, GitletObjects.BLOB)
+                        : GitletObjects.hash(file);
+                if (entry != null) {
+                    entry.hash = hash;
+                    fresh[i] = entry;
+                }
+            }
+            hashes[i] = hash;
+        });
+        for (int i = 0; i < fresh.length; i += 1) {
+            if (fresh[i] != null) {
+                entries.put(paths.get(i), fresh[i]);
+                changed = true;
+            }
+        }
+        return Arrays.asList(hashes);
+    }
+
+    /** Return the current stat data of the working file PATH, with the
+     * recorded hash if the entry for PATH matches them and is not racy,
+     * or null if PATH is not a plain file.
+     * @param path the name of the file.
+     * */
+    private Entry lookup(String path) {
+        Entry now = stat(new File(path));
+        Entry old = entries.get(path);
+        if (now != null && old != null && now.size == old.size
+                && now.mtime == old.mtime && now.inode.equals(old.inode)
+                && old.mtime < written) {
+            now.hash = old.hash;
+        }
+        return now;
+    }
+
+    /** Return the stat data of FILE, or null if it is not a plain file.
+     * @param file the file.
+     * */
+    private static Entry stat(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            if (!attrs.isRegularFile()) {
+                return null;
+            }
+            Entry entry = new Entry();
+            entry.size = attrs.size();
+            entry.mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            entry.inode = String.valueOf(attrs.fileKey());
+            return entry;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Return the modification time of FILE in nanoseconds.
+     * @param file the file.
+     * */
+    private static long modified(File file) {
+        try {
+            return Files.getLastModifiedTime(file.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /** The entries, by file name. */
+    private HashMap<String, Entry> entries = new HashMap<>();
+    /** The modification time of the index file when it was read or last
+     *  written, in nanoseconds.  Entries no older than this are racy. */
+    private transient long written = Long.MIN_VALUE;
+    /** True iff there are entries not yet saved. */
+    private transient boolean changed;
+
+    /** The file holding the index. */
+    private static final File INDEX_FILE = new File(".gitlet/index");
+}
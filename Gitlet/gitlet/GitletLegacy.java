@@ -0,0 +1,195 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Reads repositories written by the first version of Gitlet, so that
+ * migrate can convert them.  That version kept every commit inside
+ * .gitlet/data, as a GitletData whose commits held their parents as
+ * objects rather than hashes, and every blob as .gitlet/HASH.  The
+ * classes below have the same fields, and the same serialization
+ * versions, as the GitletData and GitletCommit of that version, and
+ * LegacyInputStream reads the old classes as these.
+ * @author Qianfei(Ben) Hu
+ * */
+public class GitletLegacy {
+
+    /** Return true iff .gitlet/data was written by the first version of
+     * Gitlet. */
+    static boolean isLegacy() {
+        return readData() != null;
+    }
+
+    /** Convert the commits and branches in .gitlet/data, if it was written
+     * by the first version of Gitlet, and rewrite it in the current
+     * format.  Each commit is stored as its own object after its parents,
+     * so it gets a new hash, computed as for any commit.  The blobs the
+     * commits refer to must already be in the object store.  Nothing is
+     * deleted.
+     * @return the number of commits converted.
+     * */
+    static int migrate() {
+        Data old = readData();
+        if (old == null) {
+            return 0;
+        }
+        HashMap<String, String> converted = new HashMap<>();
+        ArrayList<Commit> commits = new ArrayList<>();
+        if (old.commitMap != null) {
+            commits.addAll(old.commitMap.values());
+        }
+        if (old.branchfMap != null) {
+            commits.addAll(old.branchfMap.values());
+        }
+        for (Commit commit : commits) {
+            convert(commit, converted);
+        }
+
+        GitletData data = new GitletData();
+        if (old.branchfMap != null) {
+            for (Map.Entry<String, Commit> branch
+                    : old.branchfMap.entrySet()) {
+                data.getBranchMap().put(branch.getKey(),
+                        converted.get(branch.getValue().hash));
+            }
+        }
+        if (old.currentBranch != null) {
+            data.setCurrentBranch(old.currentBranch);
+        }
+        if (old.remoteMap != null) {
+            data.getRemote().putAll(old.remoteMap);
+        }
+        GitletData.saveGitletData(data);
+        return converted.size();
+    }
+
+    /** Store COMMIT, and those of its ancestors not yet in CONVERTED, in
+     * the current format, parents first, recording the new hash of each
+     * in CONVERTED under its old one.  Histories may be long, so no
+     * recursion is used.
+     * @param commit an old commit.
+     * @param converted the new hashes of the commits stored so far.
+     * */
+    private static void convert(Commit commit,
+                                HashMap<String, String> converted) {
+        ArrayDeque<Commit> work = new ArrayDeque<>();
+        work.push(commit);
+        while (!work.isEmpty()) {
+            Commit next = work.peek();
+            if (converted.containsKey(next.hash)) {
+                work.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (Commit parent : new Commit[] {next.parent,
+                                               next.sendParent}) {
+                if (parent != null && !converted.containsKey(parent.hash)) {
+                    work.push(parent);
+                    ready = false;
+                }
+            }
+            if (!ready) {
+                continue;
+            }
+            GitletCommit result = GitletCommit.restore(
+                    next.parent == null ? null
+                            : converted.get(next.parent.hash),
+                    next.sendParent == null ? null
+                            : converted.get(next.sendParent.hash),
+                    next.date, next.message,
+                    next.blobMap == null ? new HashMap<>() : next.blobMap);
+            result.save();
+            converted.put(next.hash, result.getHash());
+            work.pop();
+        }
+    }
+
+    /** Return the contents of .gitlet/data if it was written by the first
+     * version of Gitlet, and otherwise null. */
+    private static Data readData() {
+        if (!DATA_FILE.isFile()) {
+            return null;
+        }
+        try (ObjectInputStream in =
+                     new LegacyInputStream(new FileInputStream(DATA_FILE))) {
+            Object data = in.readObject();
+            return (data instanceof Data) ? (Data) data : null;
+        } catch (IOException | ClassNotFoundException
+                 | ClassCastException excp) {
+            return null;
+        }
+    }
+
+    /** A stream that reads the GitletData and GitletCommit of the first
+     *  version of Gitlet as Data and Commit. */
+    private static class LegacyInputStream extends ObjectInputStream {
+        /** A stream reading serialized objects from IN.
+         * @param in the underlying stream.
+         * */
+        LegacyInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+                throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            if (desc.getName().equals(GitletData.class.getName())
+                    && desc.getSerialVersionUID() == Data.serialVersionUID) {
+                return ObjectStreamClass.lookup(Data.class);
+            } else if (desc.getName().equals(GitletCommit.class.getName())
+                    && desc.getSerialVersionUID()
+                       == Commit.serialVersionUID) {
+                return ObjectStreamClass.lookup(Commit.class);
+            }
+            return desc;
+        }
+    }
+
+    /** The GitletData of the first version of Gitlet. */
+    private static class Data implements Serializable {
+        /** Serialization version of the old GitletData. */
+        private static final long serialVersionUID = -5404541518367059471L;
+
+        /** All commits, by hash. */
+        private HashMap<String, Commit> commitMap;
+        /** The head commit of each branch. */
+        private HashMap<String, Commit> branchfMap;
+        /** The current branch. */
+        private String currentBranch;
+        /** Remote directories, by name. */
+        private HashMap<String, String> remoteMap;
+        /** The hashes of the commits, in order of creation. */
+        private ArrayList<String> commitsID;
+    }
+
+    /** The GitletCommit of the first version of Gitlet. */
+    private static class Commit implements Serializable {
+        /** Serialization version of the old GitletCommit. */
+        private static final long serialVersionUID = -4268278394578858599L;
+
+        /** The time of the commit. */
+        private Date date;
+        /** The old hash of the commit. */
+        private String hash;
+        /** The parents of the commit, or null. */
+        private Commit parent, sendParent;
+        /** The message of the commit. */
+        private String message;
+        /** The files of the commit, by name. */
+        private HashMap<String, GitletBlob> blobMap;
+    }
+
+    /** The file holding the branches. */
+    private static final File DATA_FILE = new File(".gitlet/data");
+}
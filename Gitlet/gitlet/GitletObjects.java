@@ -0,0 +1,440 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** The object store of a repository.  Every object (blob, tree or
+ * commit) is kept in .gitlet/objects/XX/YYYY..., where XX is the first
+ * two digits of its hash and YYYY... the rest, so that no one directory
+ * holds more than a small fraction of the objects.  Each object file
+ * starts with a header, "TYPE LENGTH\0", giving the kind of object and
+ * the length of the contents that follow.  The header and contents are
+ * stored compressed, as a zlib stream, whose first byte (ZLIB_MAGIC)
+ * cannot start a header, so objects stored uncompressed by earlier
+ * versions are still read correctly.  The objects described here are
+ * loose; gc moves them into a pack (see GitletPack), and every method
+ * below reads packed and loose objects alike.
+ * @author Qianfei(Ben) Hu
+ */
+public class GitletObjects {
+
+    /** The type of file contents. */
+    static final String BLOB = "blob";
+    /** The type of commits. */
+    static final String COMMIT = "commit";
+    /** The type of directories (see GitletTree). */
+    static final String TREE = "tree";
+
+    /** Return the file holding the object whose hash is HASH.
+     * @param hash the hash of the object.
+     * */
+    public static File getObjectFile(String hash) {
+        return Utils.join(OBJECT_DIR, hash.substring(0, 2),
+                hash.substring(2));
+    }
+
+    /** Return true iff the store holds an object whose hash is HASH.
+     * @param hash the hash of the object.
+     * */
+    public static boolean contains(String hash) {
+        return isHash(hash)
+                && (getObjectFile(hash).isFile() || GitletPack.contains(hash));
+    }
+
+    /** Store CONTENTS as the object of type TYPE whose hash is HASH,
+     * unless it is already stored.  The file is written under a
+     * temporary name and then renamed, so a reader never sees part of an
+     * object.
+     * @param hash the hash of the object.
+     * @param type the type of the object.
+     * @param contents the contents of the object.
+     * */
+    public static void write(String hash, String type, byte[] contents) {
+        if (!contains(hash)) {
+            writeLoose(hash, type, contents);
+        }
+    }
+
+    /** Store CONTENTS as the loose object of type TYPE whose hash is HASH,
+     * unless there is already a loose object with that hash.
+     * @param hash the hash of the object.
+     * @param type the type of the object.
+     * @param contents the contents of the object.
+     * */
+    static void writeLoose(String hash, String type, byte[] contents) {
+        if (getObjectFile(hash).exists()) {
+            return;
+        }
+        File temp = tempFile();
+        try (OutputStream out = compress(temp)) {
+            out.write(header(type, contents.length));
+            out.write(contents);
+        } catch (IOException excp) {
+            temp.delete();
+            throw Utils.error("cannot write object %s", hash);
+        }
+        install(temp, hash);
+    }
+
+    /** Store the contents of FILE as an object of type TYPE and return
+     * its hash.  FILE is read once, as a stream, and hashed as it is
+     * compressed into a temporary object file, which is then renamed to
+     * the object's name (or discarded, if the object is already
+     * stored).  So a file of any size, text or not, is stored exactly,
+     * using a fixed amount of memory.  If FILE cannot be read, or changes
+     * while it is read, nothing is left behind.
+     * @param file the file to store.
+     * @param type the type of the object.
+     * @return the hash of the contents of FILE.
+     * */
+    public static String writeFile(File file, String type) {
+        File temp = tempFile();
+        MessageDigest md = sha1();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ);
+             InputStream in = new DigestInputStream(
+                     Channels.newInputStream(channel), md);
+             OutputStream out = compress(temp)) {
+            long length = channel.size();
+            out.write(header(type, length));
+            if (in.transferTo(out) != length) {
+                throw Utils.error("%s changed while being added", file);
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw Utils.error("cannot store %s", file);
+        } catch (GitletException excp) {
+            temp.delete();
+            throw excp;
+        }
+        String hash = hex(md);
+        if (GitletPack.contains(hash)) {
+            temp.delete();
+        } else {
+            install(temp, hash);
+        }
+        return hash;
+    }
+
+    /** Return the hash of the contents of FILE, which is read as a
+     * stream.
+     * @param file the file.
+     * */
+    public static String hash(File file) {
+        MessageDigest md = sha1();
+        try (InputStream in = new DigestInputStream(
+                Files.newInputStream(file.toPath()), md)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException excp) {
+            throw Utils.error("cannot read %s", file);
+        }
+        return hex(md);
+    }
+
+    /** Write the contents of the object of type TYPE whose hash is HASH
+     * to FILE, replacing its contents, as a stream.
+     * @param hash the hash of the object.
+     * @param type the expected type.
+     * @param file the file to write.
+     * */
+    public static void copyTo(String hash, String type, File file) {
+        if (!getObjectFile(hash).isFile()) {
+            byte[] contents = read(hash, type);
+            Utils.writeContents(file, contents);
+            return;
+        }
+        try (InputStream in = open(hash);
+             OutputStream out = Files.newOutputStream(file.toPath())) {
+            if (!readHeader(in)[0].equals(type)) {
+                throw Utils.error("object %s is not a %s", hash, type);
+            }
+            in.transferTo(out);
+        } catch (IOException excp) {
+            throw Utils.error("cannot write %s", file);
+        }
+    }
+
+    /** Return the contents of the object of type TYPE whose hash is
+     * HASH.
+     * @param hash the hash of the object.
+     * @param type the expected type.
+     * @return the contents.
+     * */
+    public static byte[] read(String hash, String type) {
+        if (!getObjectFile(hash).isFile()) {
+            if (!type.equals(GitletPack.type(hash))) {
+                throw Utils.error("no %s %s", type, hash);
+            }
+            return GitletPack.read(hash);
+        }
+        try (InputStream in = open(hash)) {
+            String[] header = readHeader(in);
+            if (!header[0].equals(type)) {
+                throw Utils.error("object %s is a %s, not a %s", hash,
+                        header[0], type);
+            }
+            byte[] contents = new byte[Integer.parseInt(header[1])];
+            int n = in.readNBytes(contents, 0, contents.length);
+            if (n != contents.length) {
+                throw Utils.error("object %s is truncated", hash);
+            }
+            return contents;
+        } catch (IOException | NumberFormatException excp) {
+            throw Utils.error("cannot read object %s", hash);
+        }
+    }
+
+    /** Return the type of the object whose hash is HASH, or null if there
+     * is no such object.
+     * @param hash the hash of the object.
+     * */
+    public static String type(String hash) {
+        if (!isHash(hash)) {
+            return null;
+        }
+        if (!getObjectFile(hash).isFile()) {
+            return GitletPack.type(hash);
+        }
+        try (InputStream in = open(hash)) {
+            return readHeader(in)[0];
+        } catch (IOException excp) {
+            throw Utils.error("cannot read object %s", hash);
+        }
+    }
+
+    /** Return the hashes of the stored objects of type TYPE that start
+     * with PREFIX, in order.  Only one shard of the loose objects is
+     * examined if PREFIX has at least two digits.
+     * @param type the type of the objects.
+     * @param prefix the start of their hashes.
+     * */
+    public static List<String> list(String type, String prefix) {
+        TreeSet<String> result = new TreeSet<>();
+        for (String hash : loose(prefix)) {
+            if (type.equals(type(hash))) {
+                result.add(hash);
+            }
+        }
+        List<String> packed = new ArrayList<>();
+        GitletPack.list(type, prefix, packed);
+        result.addAll(packed);
+        return new ArrayList<>(result);
+    }
+
+    /** Return the hashes of all loose objects. */
+    static List<String> loose() {
+        return loose("");
+    }
+
+    /** Return the hashes of the loose objects that start with PREFIX.
+     * @param prefix the start of their hashes.
+     * */
+    private static List<String> loose(String prefix) {
+        List<String> result = new ArrayList<>();
+        String[] shards = OBJECT_DIR.list();
+        if (shards == null) {
+            return result;
+        }
+        for (String shard : shards) {
+            if (shard.length() != 2
+                    || !(shard.startsWith(prefix)
+                         || prefix.startsWith(shard))) {
+                continue;
+            }
+            List<String> names = Utils.plainFilenamesIn(
+                    new File(OBJECT_DIR, shard));
+            for (String name : names) {
+                String hash = shard + name;
+                if (hash.startsWith(prefix) && isHash(hash)) {
+                    result.add(hash);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the length of the contents of the loose object whose hash
+     * is HASH, from its header.
+     * @param hash the hash of the object.
+     * */
+    static long length(String hash) {
+        try (InputStream in = open(hash)) {
+            return Long.parseLong(readHeader(in)[1]);
+        } catch (IOException | NumberFormatException excp) {
+            throw Utils.error("cannot read object %s", hash);
+        }
+    }
+
+    /** Copy the objects of a repository written before the object store
+     * existed into it: blobs stored as .gitlet/HASH and commits stored as
+     * .gitlet/commits/HASH.  The old files are left in place, for the
+     * caller to delete once the rest of the repository is converted.
+     * @return the old files copied.
+     * */
+    public static List<File> migrate() {
+        List<File> result = new ArrayList<>();
+        File gitlet = new File(".gitlet");
+        for (String name : Utils.plainFilenamesIn(gitlet)) {
+            if (isHash(name)) {
+                File old = new File(gitlet, name);
+                write(name, BLOB, Utils.readContents(old));
+                result.add(old);
+            }
+        }
+        File commits = new File(gitlet, "commits");
+        List<String> names = Utils.plainFilenamesIn(commits);
+        if (names != null) {
+            for (String name : names) {
+                File old = new File(commits, name);
+                if (isHash(name)) {
+                    write(name, COMMIT, Utils.readContents(old));
+                    result.add(old);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff NAME has the form of a full hash.
+     * @param name the string to check.
+     * */
+    static boolean isHash(String name) {
+        return name != null && name.length() == Utils.UID_LENGTH
+                && name.matches("[0-9a-f]+");
+    }
+
+    /** Return a stream of the header and contents of the stored object
+     * whose hash is HASH, inflating them if the object is compressed.
+     * @param hash the hash of the object.
+     * */
+    private static InputStream open(String hash) throws IOException {
+        InputStream in = new BufferedInputStream(
+                new FileInputStream(getObjectFile(hash)));
+        in.mark(1);
+        int first = in.read();
+        in.reset();
+        if (first == ZLIB_MAGIC) {
+            return new InflaterInputStream(in);
+        }
+        return in;
+    }
+
+    /** Return a stream that compresses what is written to it into FILE.
+     * @param file the file to write.
+     * */
+    private static OutputStream compress(File file) throws IOException {
+        return new DeflaterOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+    }
+
+    /** Return a new, empty temporary file in the object directory. */
+    private static File tempFile() {
+        try {
+            OBJECT_DIR.mkdirs();
+            return File.createTempFile("tmp-", null, OBJECT_DIR);
+        } catch (IOException excp) {
+            throw Utils.error("cannot create an object file");
+        }
+    }
+
+    /** Give the complete object file TEMP its name, that of the object
+     * whose hash is HASH, or delete TEMP if that object is already
+     * stored.  The rename is atomic, so a reader never sees part of an
+     * object.
+     * @param temp the object file.
+     * @param hash the hash of the object.
+     * */
+    private static void install(File temp, String hash) {
+        File file = getObjectFile(hash);
+        if (file.exists()) {
+            temp.delete();
+            return;
+        }
+        file.getParentFile().mkdirs();
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw Utils.error("cannot write object %s", hash);
+        }
+    }
+
+    /** Return a new SHA-1 digest. */
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                    + "SHA-1");
+        }
+    }
+
+    /** Return the value of MD as a hexadecimal numeral, as Utils.sha1
+     * does.
+     * @param md a digest of all the data.
+     * */
+    private static String hex(MessageDigest md) {
+        Formatter result = new Formatter();
+        for (byte b : md.digest()) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
+    /** Return the header of an object of type TYPE with LENGTH bytes of
+     * contents.
+     * @param type the type.
+     * @param length the length of the contents.
+     * */
+    private static byte[] header(String type, long length) {
+        return (type + " " + length + "\0").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Read the header of an object from IN, leaving IN at the first byte
+     * of its contents.
+     * @param in the object file.
+     * @return the type and the length (as a numeral).
+     * */
+    private static String[] readHeader(InputStream in) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) > 0) {
+            header.write(c);
+        }
+        String[] parts = header.toString(StandardCharsets.UTF_8.name())
+                .split(" ");
+        if (c != 0 || parts.length != 2) {
+            throw Utils.error("bad object header");
+        }
+        return parts;
+    }
+
+    /** The first byte of a zlib stream with the default window size. */
+    private static final int ZLIB_MAGIC = 0x78;
+
+    /** The directory holding the objects. */
+    private static final File OBJECT_DIR = new File(".gitlet/objects");
+}
@@ -0,0 +1,630 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** The packed objects of a repository.  gc copies the objects of the
+ * store into one pack file, .gitlet/objects/pack/pack-SHA.pack, where
+ * SHA is the hash of its contents, and deletes their loose files.
+ * Successive versions of the same file are stored as deltas (see
+ * GitletDelta) against the previous version, so a file that changes a
+ * little at a time costs little more than its changes.
+ *
+ * The pack is a header (PACK_MAGIC, VERSION, the number of objects)
+ * followed by the objects.  Each is a kind (FULL or DELTA), for a DELTA
+ * the offset in the pack of its base, the length of its data once
+ * inflated, the length of its data, and its data: the contents or the
+ * delta, compressed with zlib.
+ *
+ * The index, pack-SHA.idx, is a header (INDEX_MAGIC, VERSION, the number of
+ * objects), a fanout table of 256 counts, the Kth being the number of
+ * objects whose hashes start with a byte at most K, and then one ENTRY
+ * for each object, in order of hash: the hash, as 20 bytes, the offset of
+ * the object in the pack and its type.  Both files are mapped into
+ * memory, and an object is found by binary search of the entries for the
+ * first byte of its hash, without reading the rest of the index.
+ *
+ * A new pack and its index are written under temporary names and then
+ * renamed, the index last, and only then is the old pair deleted.  A
+ * pack is used only once its index exists, so a repository interrupted
+ * at any point still has one complete pack and index.
+ * @author Qianfei(Ben) Hu
+ */
+public class GitletPack {
+
+    /** Return true iff the pack holds the object whose hash is HASH.
+     * @param hash the hash of the object.
+     * */
+    static boolean contains(String hash) {
+        return find(hash) >= 0;
+    }
+
+    /** Return the type of the packed object whose hash is HASH, or null
+     * if it is not packed.
+     * @param hash the hash of the object.
+     * */
+    static String type(String hash) {
+        int k = find(hash);
+        return k < 0 ? null : TYPES[index.getInt(entry(k) + OFFSET_TYPE)];
+    }
+
+    /** Return the contents of the packed object whose hash is HASH.
+     * @param hash the hash of the object.
+     * */
+    static byte[] read(String hash) {
+        int k = find(hash);
+        if (k < 0) {
+            throw Utils.error("no object %s", hash);
+        }
+        return readAt(index.getLong(entry(k) + OFFSET_POSITION));
+    }
+
+    /** Add the hashes of the packed objects of type TYPE whose hashes
+     * start with PREFIX to RESULT.
+     * @param type the type of the objects.
+     * @param prefix the start of their hashes.
+     * @param result the hashes found so far.
+     * */
+    static void list(String type, String prefix, List<String> result) {
+        if (!open()) {
+            return;
+        }
+        for (int k = 0; k < count; k += 1) {
+            String hash = hashAt(k);
+            if (hash.startsWith(prefix)
+                    && type.equals(TYPES[index.getInt(entry(k)
+                                                      + OFFSET_TYPE)])) {
+                result.add(hash);
+            }
+        }
+    }
+
+    /** Pack every object of the store, loose or already packed, into a
+     * new pack, except loose objects larger than BIG_OBJECT, which are
+     * left as they are, and delete the old pack and the loose files of
+     * the objects packed, with the directories they leave empty.
+     * @return the number of objects packed and the number of those
+     * stored as deltas.
+     * */
+    static int[] repack() {
+        TreeMap<String, String> types = new TreeMap<>();
+        for (String hash : GitletObjects.loose()) {
+            if (GitletObjects.length(hash) <= BIG_OBJECT) {
+                types.put(hash, GitletObjects.type(hash));
+            }
+        }
+        if (open()) {
+            for (int k = 0; k < count; k += 1) {
+                types.put(hashAt(k),
+                        TYPES[index.getInt(entry(k) + OFFSET_TYPE)]);
+            }
+        }
+
+        HashMap<String, String> bases = new HashMap<>();
+        LinkedHashSet<String> order = versionOrder(types, bases);
+        order.addAll(types.keySet());
+
+        File temp = tempFile("pack");
+        HashMap<String, Long> positions = new HashMap<>();
+        HashMap<String, Integer> depths = new HashMap<>();
+        int deltas = 0;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(PACK_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(order.size());
+            long position = HEADER;
+            String lastHash = null;
+            byte[] last = null;
+            for (String hash : order) {
+                String type = types.get(hash);
+                byte[] contents = GitletObjects.read(hash, type);
+                String base = bases.get(hash);
+                byte[] data = null;
+                if (base != null && positions.containsKey(base)
+                        && depths.get(base) < MAX_DEPTH) {
+                    byte[] baseContents = base.equals(lastHash) ? last
+                            : GitletObjects.read(base, GitletObjects.BLOB);
+                    byte[] delta = GitletDelta.encode(baseContents,
+                            contents);
+                    if (delta.length < contents.length / 2) {
+                        data = delta;
+                    }
+                }
+                byte[] deflated = deflate(data == null ? contents : data);
+                if (position + deflated.length + ENTRY_OVERHEAD
+                        >= Integer.MAX_VALUE) {
+                    GitletObjects.writeLoose(hash, type, contents);
+                    continue;
+                }
+                positions.put(hash, position);
+                if (data == null) {
+                    out.writeByte(FULL);
+                    depths.put(hash, 0);
+                    position += 1;
+                } else {
+                    out.writeByte(DELTA);
+                    out.writeLong(positions.get(base));
+                    depths.put(hash, depths.get(base) + 1);
+                    deltas += 1;
+                    position += 1 + 8;
+                }
+                out.writeInt(data == null ? contents.length : data.length);
+                out.writeInt(deflated.length);
+                out.write(deflated);
+                position += 4 + 4 + deflated.length;
+                lastHash = hash;
+                last = contents;
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw Utils.error("cannot write pack");
+        }
+        if (positions.size() != order.size()) {
+            rewriteCount(temp, positions.size());
+        }
+
+        File tempIndex = writeIndex(positions, types);
+        String name = "pack-" + GitletObjects.hash(temp);
+        File packFile = new File(PACK_DIR, name + ".pack");
+        File indexFile = new File(PACK_DIR, name + ".idx");
+        install(temp, packFile);
+        install(tempIndex, indexFile);
+        index = pack = null;
+        removePacks(indexFile, packFile);
+
+        TreeSet<File> shards = new TreeSet<>();
+        for (String hash : positions.keySet()) {
+            File object = GitletObjects.getObjectFile(hash);
+            if (object.delete()) {
+                shards.add(object.getParentFile());
+            }
+        }
+        for (File shard : shards) {
+            shard.delete();
+        }
+        return new int[] {positions.size(), deltas};
+    }
+
+    /** Return the blobs among the objects in TYPES in the order of the
+     * versions of each file that the commits hold, from the first version
+     * to the last, and set BASES to map each blob to the previous version
+     * of the same file.  A blob that is a version of several files is
+     * placed with the first of them.  The trees of the commits are walked
+     * once each, as most are shared between commits.
+     * @param types the type of each object, by hash.
+     * @param bases the base of each delta, filled in.
+     * @return the blobs in order.
+     * */
+    private static LinkedHashSet<String> versionOrder(
+            Map<String, String> types, Map<String, String> bases) {
+        TreeMap<String, List<GitletBlob>> versions = new TreeMap<>();
+        HashSet<String> walked = new HashSet<>();
+        for (Map.Entry<String, String> object : types.entrySet()) {
+            if (!object.getValue().equals(GitletObjects.COMMIT)) {
+                continue;
+            }
+            GitletCommit commit = GitletCommit.load(object.getKey());
+            walkTree(commit.getTree(), "", walked, versions);
+        }
+
+        LinkedHashSet<String> order = new LinkedHashSet<>();
+        for (List<GitletBlob> blobs : versions.values()) {
+            blobs.sort(Comparator.comparingInt(GitletBlob::getVersion)
+                    .thenComparing(GitletBlob::getHash));
+            String previous = null;
+            HashSet<String> seen = new HashSet<>();
+            for (GitletBlob blob : blobs) {
+                String hash = blob.getHash();
+                if (!types.containsKey(hash) || !seen.add(hash)) {
+                    continue;
+                }
+                if (order.add(hash) && previous != null) {
+                    bases.put(hash, previous);
+                }
+                previous = hash;
+            }
+        }
+        return order;
+    }
+
+    /** Add the blobs of the tree whose hash is HASH, whose path is PREFIX,
+     * and of its subtrees to VERSIONS, by path, skipping the trees in
+     * WALKED and adding the others to it.
+     * @param hash the hash of a tree.
+     * @param prefix the path of its directory.
+     * @param walked the hashes of the trees already walked.
+     * @param versions the blobs found so far, by path.
+     * */
+    private static void walkTree(String hash, String prefix,
+                                 HashSet<String> walked,
+                                 Map<String, List<GitletBlob>> versions) {
+        if (hash == null || !walked.add(hash)) {
+            return;
+        }
+        GitletTree tree = GitletTree.load(hash);
+        for (Map.Entry<String, GitletBlob> blob
+                : tree.getBlobs().entrySet()) {
+            versions.computeIfAbsent(prefix + blob.getKey(),
+                    k -> new ArrayList<>()).add(blob.getValue());
+        }
+        for (Map.Entry<String, String> sub : tree.getTrees().entrySet()) {
+            walkTree(sub.getValue(), prefix + sub.getKey() + "/", walked,
+                    versions);
+        }
+    }
+
+    /** Write the index of a pack whose objects are at POSITIONS and have
+     * the types in TYPES to a temporary file, and return it.
+     * @param positions the offset of each object in the pack, by hash.
+     * @param types the type of each object, by hash.
+     * */
+    private static File writeIndex(Map<String, Long> positions,
+                                   Map<String, String> types) {
+        List<String> hashes = new ArrayList<>(positions.keySet());
+        hashes.sort(null);
+        int[] fanout = new int[FANOUT];
+        for (String hash : hashes) {
+            fanout[Integer.parseInt(hash.substring(0, 2), 16)] += 1;
+        }
+        for (int b = 1; b < FANOUT; b += 1) {
+            fanout[b] += fanout[b - 1];
+        }
+
+        File temp = tempFile("idx");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(hashes.size());
+            for (int n : fanout) {
+                out.writeInt(n);
+            }
+            for (String hash : hashes) {
+                out.write(toBytes(hash));
+                out.writeLong(positions.get(hash));
+                out.writeInt(typeCode(types.get(hash)));
+            }
+        } catch (IOException excp) {
+            temp.delete();
+            throw Utils.error("cannot write pack index");
+        }
+        return temp;
+    }
+
+    /** Delete every pack and index other than the index INDEX and the
+     * pack PACK, the indexes first, so that no index outlives its pack.
+     * @param index the index to keep.
+     * @param pack the pack to keep.
+     * */
+    private static void removePacks(File index, File pack) {
+        for (String suffix : new String[] {".idx", ".pack"}) {
+            for (File file : packFiles(suffix)) {
+                if (!file.equals(index) && !file.equals(pack)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /** Return the packs or indexes, by SUFFIX, in the pack directory,
+     * leaving out files still being written.
+     * @param suffix ".pack" or ".idx".
+     * */
+    private static List<File> packFiles(String suffix) {
+        List<File> result = new ArrayList<>();
+        File[] files = PACK_DIR.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(suffix) && !name.startsWith("tmp-")
+                        && file.isFile()) {
+                    result.add(file);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the index of the current pack, the most recently written
+     * if an interrupted gc left two, or null if there is none.  Either
+     * of two indexes is complete, as the loose objects the older lacks
+     * are deleted only after the newer is written. */
+    private static File currentIndex() {
+        File result = null;
+        for (File file : packFiles(".idx")) {
+            if (result == null
+                    || file.lastModified() > result.lastModified()
+                    || (file.lastModified() == result.lastModified()
+                        && file.compareTo(result) > 0)) {
+                result = file;
+            }
+        }
+        return result;
+    }
+
+    /** Set the number of objects in the header of the pack TEMP to N,
+     * after some objects were left out.
+     * @param temp the pack.
+     * @param n the number of objects it holds.
+     * */
+    private static void rewriteCount(File temp, int n) {
+        try (FileChannel channel = FileChannel.open(temp.toPath(),
+                StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocate(4).putInt(n);
+            buf.flip();
+            channel.write(buf, 8);
+        } catch (IOException excp) {
+            temp.delete();
+            throw Utils.error("cannot write pack");
+        }
+    }
+
+    /** Return the contents of the object at POSITION in the pack,
+     * applying deltas to their bases as needed.
+     * @param position the offset of the object.
+     * */
+    private static byte[] readAt(long position) {
+        ByteBuffer buf = pack.duplicate();
+        buf.position((int) position);
+        byte kind = buf.get();
+        long base = kind == DELTA ? buf.getLong() : -1;
+        byte[] data = new byte[buf.getInt()];
+        byte[] deflated = new byte[buf.getInt()];
+        buf.get(deflated);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            if (inflater.inflate(data) != data.length) {
+                throw Utils.error("truncated object in pack");
+            }
+        } catch (DataFormatException excp) {
+            throw Utils.error("corrupt object in pack");
+        } finally {
+            inflater.end();
+        }
+        if (kind == DELTA) {
+            return GitletDelta.apply(readAt(base), data);
+        }
+        return data;
+    }
+
+    /** Return the position of the entry for HASH in the index, or -1 if
+     * it is not packed.
+     * @param hash the hash of the object.
+     * */
+    private static int find(String hash) {
+        if (!GitletObjects.isHash(hash) || !open()) {
+            return -1;
+        }
+        byte[] key = toBytes(hash);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        int hi = fanout(first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(key, entry(mid));
+            if (c == 0) {
+                return mid;
+            } else if (c < 0) {
+                hi = mid - 1;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the Kth count of the fanout table.
+     * @param k a first byte.
+     * */
+    private static int fanout(int k) {
+        return index.getInt(HEADER + 4 * k);
+    }
+
+    /** Return the offset in the index of the Kth entry.
+     * @param k the number of the entry.
+     * */
+    private static int entry(int k) {
+        return HEADER + 4 * FANOUT + ENTRY * k;
+    }
+
+    /** Compare KEY with the hash of the entry at offset AT in the index.
+     * @param key a hash, as bytes.
+     * @param at the offset of the entry.
+     * @return the comparison of the unsigned bytes.
+     * */
+    private static int compare(byte[] key, int at) {
+        for (int i = 0; i < key.length; i += 1) {
+            int c = (key[i] & 0xff) - (index.get(at + i) & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the hash of the Kth entry of the index.
+     * @param k the number of the entry.
+     * */
+    private static String hashAt(int k) {
+        StringBuilder hash = new StringBuilder();
+        for (int i = 0; i < HASH_BYTES; i += 1) {
+            hash.append(String.format("%02x", index.get(entry(k) + i)));
+        }
+        return hash.toString();
+    }
+
+    /** Map the index and the pack into memory, if there is a pack and they
+     * are not already mapped.  Objects may be read by several threads at
+     * once, so only one maps the files.
+     * @return true iff there is a pack.
+     * */
+    private static synchronized boolean open() {
+        if (index != null) {
+            return true;
+        }
+        File indexFile = currentIndex();
+        if (indexFile == null) {
+            return false;
+        }
+        ByteBuffer idx = map(indexFile);
+        if (idx.getInt(0) != INDEX_MAGIC || idx.getInt(4) != VERSION) {
+            throw Utils.error("bad pack index");
+        }
+        String name = indexFile.getName();
+        pack = map(new File(PACK_DIR, name.substring(0, name.length()
+                - ".idx".length()) + ".pack"));
+        if (pack.getInt(0) != PACK_MAGIC
+                || pack.getInt(8) != idx.getInt(8)) {
+            throw Utils.error("pack does not match its index");
+        }
+        count = idx.getInt(8);
+        index = idx;
+        return true;
+    }
+
+    /** Return the contents of FILE, mapped read-only into memory.
+     * @param file the file.
+     * */
+    private static ByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw Utils.error("cannot read %s", file);
+        }
+    }
+
+    /** Return CONTENTS compressed with zlib.
+     * @param contents the bytes.
+     * */
+    private static byte[] deflate(byte[] contents) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(contents);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[BUFFER];
+        while (!deflater.finished()) {
+            out.write(buf, 0, deflater.deflate(buf));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    /** Return a new temporary file in the pack directory, with suffix
+     * SUFFIX.
+     * @param suffix the suffix.
+     * */
+    private static File tempFile(String suffix) {
+        try {
+            PACK_DIR.mkdirs();
+            return File.createTempFile("tmp-", "." + suffix, PACK_DIR);
+        } catch (IOException excp) {
+            throw Utils.error("cannot create a pack file");
+        }
+    }
+
+    /** Rename TEMP to FILE, replacing it.
+     * @param temp the new file.
+     * @param file its name.
+     * */
+    private static void install(File temp, File file) {
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            temp.delete();
+            throw Utils.error("cannot write %s", file);
+        }
+    }
+
+    /** Return HASH as bytes.
+     * @param hash a full hash.
+     * */
+    private static byte[] toBytes(String hash) {
+        byte[] result = new byte[HASH_BYTES];
+        for (int i = 0; i < HASH_BYTES; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                    hash.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Return the code of TYPE in the index.
+     * @param type the type of an object.
+     * */
+    private static int typeCode(String type) {
+        for (int code = 1; code < TYPES.length; code += 1) {
+            if (TYPES[code].equals(type)) {
+                return code;
+            }
+        }
+        throw Utils.error("unknown object type %s", type);
+    }
+
+    /** Object types, by their codes in the index. */
+    private static final String[] TYPES = {
+        null, GitletObjects.BLOB, GitletObjects.COMMIT, GitletObjects.TREE
+    };
+
+    /** Loose objects larger than this are not packed. */
+    private static final long BIG_OBJECT = 32 << 20;
+    /** The longest chain of deltas that must be applied to read an
+     *  object. */
+    private static final int MAX_DEPTH = 10;
+
+    /** The kinds of packed objects. */
+    private static final byte FULL = 1, DELTA = 2;
+    /** The bytes before the data of a packed object, at most. */
+    private static final int ENTRY_OVERHEAD = 1 + 8 + 4 + 4;
+    /** Magic numbers of packs and of their indexes. */
+    private static final int PACK_MAGIC = 0x474c504b,
+        INDEX_MAGIC = 0x474c4958;
+    /** The version of the pack and index formats. */
+    private static final int VERSION = 1;
+    /** Length of the headers of packs and indexes. */
+    private static final int HEADER = 12;
+    /** Number of counts in the fanout table. */
+    private static final int FANOUT = 256;
+    /** Length of a hash as bytes. */
+    private static final int HASH_BYTES = 20;
+    /** Offsets of the position and type within an index entry, and the
+     *  length of an entry. */
+    private static final int OFFSET_POSITION = HASH_BYTES,
+        OFFSET_TYPE = OFFSET_POSITION + 8, ENTRY = OFFSET_TYPE + 4;
+    /** Size of the buffer used when compressing. */
+    private static final int BUFFER = 8192;
+
+    /** The directory holding the pack. */
+    private static final File PACK_DIR = new File(".gitlet/objects/pack");
+
+    /** The index and the pack, mapped into memory, or null if not yet
+     *  mapped. */
+    private static ByteBuffer index, pack;
+    /** The number of packed objects. */
+    private static int count;
+}
@@ -9,6 +9,9 @@ import java.util.HashSet;
  * @author Qianfei(Ben) Hu
  * */
 public class GitletStage implements Serializable {
+    /** Serialization version of .gitlet/stage. */
+    private static final long serialVersionUID = -7272353674183815363L;
+
     /** Saving the Added Blobs. */
     private HashMap<String, GitletBlob> addedBlobMap;
 
@@ -86,7 +89,6 @@ public class GitletStage implements Serializable {
     /** Return the staged file from blob.
      * @param blob the content of the file to be staged. */
     public static File getStageFile(GitletBlob blob) {
-        File file = new File(".gitlet/" + blob.getHash());
-        return file;
+        return blob.getFile();
     }
 }
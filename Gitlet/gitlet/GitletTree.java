@@ -0,0 +1,338 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** GitletTree class.  A directory of a commit: the files directly in it,
+ * as blobs, and its subdirectories, as the hashes of their trees.  A tree
+ * is stored as an object of type TREE whose contents are one line per
+ * entry, in order of name, either "blob HASH VERSION NAME" or
+ * "tree HASH NAME", and its hash is computed from those contents.  So a
+ * directory that is the same in two commits has the same tree in both,
+ * stored once, and comparing it between them takes no further work.
+ * @author Qianfei(Ben) Hu
+ * */
+public class GitletTree {
+
+    /** A tree with the files BLOBS and the subdirectories TREES.
+     * @param blobs the files, by name.
+     * @param trees the hashes of the subdirectories, by name.
+     * */
+    private GitletTree(TreeMap<String, GitletBlob> blobs,
+                       TreeMap<String, String> trees) {
+        this.blobs = blobs;
+        this.trees = trees;
+        this.hash = Utils.sha1("tree\n", encode());
+    }
+
+    /** Return the hash of this tree. */
+    public String getHash() {
+        return hash;
+    }
+
+    /** Return the files directly in this directory, by name. */
+    public Map<String, GitletBlob> getBlobs() {
+        return blobs;
+    }
+
+    /** Return the hashes of the subdirectories of this directory, by
+     *  name. */
+    public Map<String, String> getTrees() {
+        return trees;
+    }
+
+    /** Store the trees of the directories holding FILES, unless they are
+     * already stored, and return the hash of the top one.
+     * @param files the files of a commit, by path.
+     * @return the hash of the tree of the working directory.
+     * */
+    public static String write(Map<String, GitletBlob> files) {
+        return write(new TreeMap<>(files), "");
+    }
+
+    /** Store the trees of the directories changed by applying CHANGES to
+     * the tree whose hash is HASH, and return the hash of the new top
+     * tree.  The trees of directories holding no changed file are shared
+     * with the old tree, so the work done is proportional to the number
+     * of changed files (and the sizes of their directories), not to the
+     * number of files.  Directories left with no files are dropped.
+     * @param hash the hash of a tree, or null for the empty tree.
+     * @param changes the blobs of the files to add or replace, and null
+     *                for the files to remove, by path.
+     * @return the hash of the changed tree.
+     * */
+    public static String update(String hash,
+                                Map<String, GitletBlob> changes) {
+        if (changes.isEmpty() && hash != null) {
+            return hash;
+        }
+        String result = update(hash, new TreeMap<>(changes), "");
+        return (result == null) ? save(EMPTY) : result;
+    }
+
+    /** Return the files of the tree whose hash is HASH and of its
+     * subtrees, by path.
+     * @param hash the hash of a tree, or null for the empty tree.
+     * @return a new map from paths to blobs.
+     * */
+    public static HashMap<String, GitletBlob> files(String hash) {
+        HashMap<String, GitletBlob> result = new HashMap<>();
+        files(hash, "", result);
+        return result;
+    }
+
+    /** Return the blob of the file PATH in the tree whose hash is HASH, or
+     * null if it has no such file.  Only the trees of the directories on
+     * PATH are read.
+     * @param hash the hash of a tree, or null for the empty tree.
+     * @param path the path of a file.
+     * @return its blob, or null.
+     * */
+    public static GitletBlob get(String hash, String path) {
+        String[] names = path.split("/");
+        GitletTree tree = load(hash);
+        for (int i = 0; i < names.length - 1; i += 1) {
+            String sub = tree.trees.get(names[i]);
+            if (sub == null) {
+                return null;
+            }
+            tree = load(sub);
+        }
+        GitletBlob blob = tree.blobs.get(names[names.length - 1]);
+        return (blob == null) ? null
+                : new GitletBlob(path, blob.getVersion(), blob.getHash());
+    }
+
+    /** Return the tree whose hash is HASH, reading it the first time it is
+     * asked for.
+     * @param hash the hash of the tree, or null for the empty tree.
+     * @return the tree.
+     * */
+    public static GitletTree load(String hash) {
+        if (hash == null) {
+            return EMPTY;
+        }
+        GitletTree tree = LOADED.get(hash);
+        if (tree == null) {
+            tree = decode(new String(GitletObjects.read(hash,
+                    GitletObjects.TREE), StandardCharsets.UTF_8));
+            if (!tree.hash.equals(hash)) {
+                throw Utils.error("tree %s is corrupt", hash);
+            }
+            LOADED.put(hash, tree);
+        }
+        return tree;
+    }
+
+    /** Add to RESULT the paths of the files that differ between the trees
+     * whose hashes are A and B: those in only one of them, and those
+     * whose blobs differ.  Subdirectories whose trees are the same are
+     * not examined.
+     * @param a the hash of a tree, or null for the empty tree.
+     * @param b the hash of another tree, or null.
+     * @param result the paths found so far.
+     * */
+    public static void diff(String a, String b, Collection<String> result) {
+        diff(a, b, "", result);
+    }
+
+    /** Add to RESULT the paths, starting with PREFIX, of the files that
+     * differ between the trees whose hashes are A and B.
+     * @param a the hash of a tree, or null.
+     * @param b the hash of another tree, or null.
+     * @param prefix the path of the directory of both trees.
+     * @param result the paths found so far.
+     * */
+    private static void diff(String a, String b, String prefix,
+                             Collection<String> result) {
+        if (a == null ? b == null : a.equals(b)) {
+            return;
+        }
+        GitletTree ta = load(a), tb = load(b);
+        TreeSet<String> names = new TreeSet<>(ta.blobs.keySet());
+        names.addAll(tb.blobs.keySet());
+        for (String name : names) {
+            GitletBlob ba = ta.blobs.get(name), bb = tb.blobs.get(name);
+            if (ba == null || bb == null
+                    || !ba.getHash().equals(bb.getHash())) {
+                result.add(prefix + name);
+            }
+        }
+        names = new TreeSet<>(ta.trees.keySet());
+        names.addAll(tb.trees.keySet());
+        for (String name : names) {
+            diff(ta.trees.get(name), tb.trees.get(name),
+                    prefix + name + "/", result);
+        }
+    }
+
+    /** Apply CHANGES, all of whose paths start with PREFIX, to the tree
+     * whose hash is HASH, storing the changed trees, and return the hash
+     * of the new tree of the directory PREFIX, or null if it is left
+     * empty.
+     * @param hash the hash of the tree, or null for the empty tree.
+     * @param changes blobs, or null for removed files, by path.
+     * @param prefix the path of the directory, ending in "/" unless
+     *               empty.
+     * @return the hash of its new tree, or null.
+     * */
+    private static String update(String hash,
+                                 TreeMap<String, GitletBlob> changes,
+                                 String prefix) {
+        GitletTree old = load(hash);
+        TreeMap<String, GitletBlob> blobs = new TreeMap<>(old.blobs);
+        TreeMap<String, String> trees = new TreeMap<>(old.trees);
+        TreeMap<String, TreeMap<String, GitletBlob>> subdirs
+                = new TreeMap<>();
+        for (Map.Entry<String, GitletBlob> change : changes.entrySet()) {
+            String name = change.getKey().substring(prefix.length());
+            int slash = name.indexOf('/');
+            if (slash >= 0) {
+                subdirs.computeIfAbsent(name.substring(0, slash),
+                        k -> new TreeMap<>()).put(change.getKey(),
+                        change.getValue());
+            } else if (change.getValue() == null) {
+                blobs.remove(name);
+            } else {
+                blobs.put(name, change.getValue());
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, GitletBlob>> subdir
+                : subdirs.entrySet()) {
+            String name = subdir.getKey();
+            String sub = update(trees.get(name), subdir.getValue(),
+                    prefix + name + "/");
+            if (sub == null) {
+                trees.remove(name);
+            } else {
+                trees.put(name, sub);
+            }
+        }
+        if (blobs.isEmpty() && trees.isEmpty()) {
+            return null;
+        }
+        return save(new GitletTree(blobs, trees));
+    }
+
+    /** Add the files of the tree whose hash is HASH, whose path is PREFIX,
+     * and of its subtrees to RESULT.
+     * @param hash the hash of a tree, or null.
+     * @param prefix the path of its directory.
+     * @param result blobs, by path.
+     * */
+    private static void files(String hash, String prefix,
+                              Map<String, GitletBlob> result) {
+        GitletTree tree = load(hash);
+        for (Map.Entry<String, GitletBlob> blob : tree.blobs.entrySet()) {
+            String path = prefix + blob.getKey();
+            result.put(path, new GitletBlob(path,
+                    blob.getValue().getVersion(), blob.getValue().getHash()));
+        }
+        for (Map.Entry<String, String> sub : tree.trees.entrySet()) {
+            files(sub.getValue(), prefix + sub.getKey() + "/", result);
+        }
+    }
+
+    /** Store TREE, unless it is already stored, and return its hash.
+     * @param tree a tree.
+     * */
+    private static String save(GitletTree tree) {
+        if (!LOADED.containsKey(tree.hash)) {
+            LOADED.put(tree.hash, tree);
+            GitletObjects.write(tree.hash, GitletObjects.TREE,
+                    tree.encode().getBytes(StandardCharsets.UTF_8));
+        }
+        return tree.hash;
+    }
+
+    /** Store the trees of the directories holding FILES, all of whose
+     * paths start with PREFIX, and return the hash of the tree of the
+     * directory PREFIX.
+     * @param files files, by path.
+     * @param prefix the path of their directory, ending in "/" unless
+     *               empty.
+     * @return the hash of its tree.
+     * */
+    private static String write(TreeMap<String, GitletBlob> files,
+                                String prefix) {
+        TreeMap<String, GitletBlob> blobs = new TreeMap<>();
+        TreeMap<String, TreeMap<String, GitletBlob>> subdirs
+                = new TreeMap<>();
+        for (Map.Entry<String, GitletBlob> file : files.entrySet()) {
+            String name = file.getKey().substring(prefix.length());
+            int slash = name.indexOf('/');
+            if (slash < 0) {
+                blobs.put(name, file.getValue());
+            } else {
+                subdirs.computeIfAbsent(name.substring(0, slash),
+                        k -> new TreeMap<>()).put(file.getKey(),
+                        file.getValue());
+            }
+        }
+        TreeMap<String, String> trees = new TreeMap<>();
+        for (Map.Entry<String, TreeMap<String, GitletBlob>> subdir
+                : subdirs.entrySet()) {
+            trees.put(subdir.getKey(), write(subdir.getValue(),
+                    prefix + subdir.getKey() + "/"));
+        }
+        return save(new GitletTree(blobs, trees));
+    }
+
+    /** Return the stored contents of this tree. */
+    private String encode() {
+        TreeMap<String, String> lines = new TreeMap<>();
+        for (Map.Entry<String, GitletBlob> blob : blobs.entrySet()) {
+            lines.put(blob.getKey(), "blob " + blob.getValue().getHash()
+                    + " " + blob.getValue().getVersion() + " "
+                    + blob.getKey() + "\n");
+        }
+        for (Map.Entry<String, String> tree : trees.entrySet()) {
+            lines.put(tree.getKey(), "tree " + tree.getValue() + " "
+                    + tree.getKey() + "\n");
+        }
+        return String.join("", lines.values());
+    }
+
+    /** Return the tree whose stored contents are CONTENTS.  The blobs'
+     * paths are only their names, as the directory is not known.
+     * @param contents the contents of a TREE object.
+     * */
+    private static GitletTree decode(String contents) {
+        TreeMap<String, GitletBlob> blobs = new TreeMap<>();
+        TreeMap<String, String> trees = new TreeMap<>();
+        for (String line : contents.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split(" ", line.startsWith("blob") ? 4 : 3);
+            if (fields[0].equals("blob") && fields.length == 4) {
+                blobs.put(fields[3], new GitletBlob(fields[3],
+                        Integer.parseInt(fields[2]), fields[1]));
+            } else if (fields[0].equals("tree") && fields.length == 3) {
+                trees.put(fields[2], fields[1]);
+            } else {
+                throw Utils.error("bad tree entry: %s", line);
+            }
+        }
+        return new GitletTree(blobs, trees);
+    }
+
+    /** The files of this directory, by name. */
+    private final TreeMap<String, GitletBlob> blobs;
+    /** The hashes of the trees of its subdirectories, by name. */
+    private final TreeMap<String, String> trees;
+    /** The hash of this tree. */
+    private final String hash;
+
+    /** The tree of an empty directory. */
+    private static final GitletTree EMPTY
+            = new GitletTree(new TreeMap<>(), new TreeMap<>());
+
+    /** Trees read or written by this command, by hash. */
+    private static final HashMap<String, GitletTree> LOADED
+            = new HashMap<>();
+}
@@ -1,18 +1,32 @@
 package gitlet;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Driver class for Gitlet, the tiny stupid version-control system.
  * @author Qianfei(Ben) Hu
  */
 public class Main {
-    /** The main method.
+    /** The main method.  A command that fails with a GitletException
+     * prints its message.
      *
      * @param args the input arguments.
      * @throws IOException
      */
     public static void main(String... args) throws IOException {
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            System.exit(0);
+        }
+    }
+
+    /** Run the command given by ARGS.
+     * @param args the input arguments.
+     * */
+    private static void run(String[] args) throws IOException {
         if (args.length <= 0) {
             System.out.println("Please enter a command.");
         } else if (args[0].equals("init")) {
@@ -23,10 +37,11 @@ public class Main {
                 System.exit(res);
             }
         } else if (args[0].equals("add")) {
-            if (args.length != 2) {
+            if (args.length < 2) {
                 System.out.println("Incorrect operands.");
             } else {
-                int res = GitletCommandRunner.add(args[1]);
+                int res = GitletCommandRunner.add(
+                        Arrays.asList(args).subList(1, args.length));
                 System.exit(res);
             }
         } else if (args[0].equals("rm")) {
@@ -115,6 +130,20 @@ public class Main {
                 int res = GitletCommandRunner.reset(args[1]);
                 System.exit(res);
             }
+        } else if (args[0].equals("migrate")) {
+            if (args.length != 1) {
+                System.out.println("Incorrect operands.");
+            } else {
+                int res = GitletCommandRunner.migrate();
+                System.exit(res);
+            }
+        } else if (args[0].equals("gc")) {
+            if (args.length != 1) {
+                System.out.println("Incorrect operands.");
+            } else {
+                int res = GitletCommandRunner.gc();
+                System.exit(res);
+            }
         } else if (args[0].equals("merge")) {
             if (args.length != 2) {
                 System.out.println("Incorrect operands.");
@@ -13,7 +13,8 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(UnitTest.class));
+        System.exit(textui.runClasses(UnitTest.class,
+                                      GitletDeltaTest.class));
     }
 
     /** A dummy test to avoid complaint. */